@@ -0,0 +1,472 @@
+/*
+Copyright (c) 2008, Roberto Milev
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or 
+without modification, are permitted provided that the following 
+conditions are met:
+
+    * Redistributions of source code must retain the above 
+      copyright notice, this list of conditions and the following 
+      disclaimer.
+    * Redistributions in binary form must reproduce the above 
+      copyright notice, this list of conditions and the following 
+      disclaimer in the documentation and/or other materials 
+      provided with the distribution.
+    * Neither the name of the Carleton University nor the names 
+      of its contributors may be used to endorse or promote 
+      products derived from this software without specific prior 
+      written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR 
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF 
+ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+*/
+package edu.carleton.tim.jdsm;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Index of the clusters of a DSM by position. <br>
+ * <br>
+ * The clusters are given ids in the order of their start positions, and the
+ * index keeps the id of the innermost cluster at each position, so that the
+ * cluster of a position is found in O(1) instead of checking every cluster.
+ * Clusters may be nested, as the package clusters created by
+ * {@link edu.carleton.tim.jdsm.dependency.provider.DependencyFinderDSMProvider}
+ * are; {@link #getParent(int)} gives the enclosing cluster. As in
+ * {@link edu.carleton.tim.jdsm.dependency.analysis.ClusteredCost}, a cluster
+ * contains the positions from its start to its end, both included. <br>
+ * <br>
+ * {@link #moveToCluster(int, int)} moves an element to the end of another
+ * cluster. When the clusters do not overlap, only the clusters between the
+ * source and the target are touched, and they are found by binary search on
+ * the start positions; otherwise every cluster is updated and the index is
+ * rebuilt. The index is not backed by the mappings of the DSM; use
+ * {@link #writeTo(DesignStructureMatrix)} to store the result of the moves.
+ */
+public class ClusterIndex {
+
+    /**
+     * The name of each cluster.
+     */
+    protected String[] names;
+
+    /**
+     * The start position of each cluster.
+     */
+    protected int[] starts;
+
+    /**
+     * The end position of each cluster, included.
+     */
+    protected int[] ends;
+
+    /**
+     * The enclosing cluster of each cluster, or -1.
+     */
+    protected int[] parents;
+
+    /**
+     * Whether each cluster has been removed.
+     */
+    protected boolean[] removed;
+
+    /**
+     * The clusters that have not been removed, in the order of their start
+     * positions.
+     */
+    protected int[] order;
+
+    /**
+     * The number of clusters that have not been removed.
+     */
+    protected int clusterCount;
+
+    /**
+     * The innermost cluster at each position, or -1.
+     */
+    protected int[] clusterAt;
+
+    /**
+     * Whether some clusters overlap.
+     */
+    protected boolean nested;
+
+    /**
+     * The cluster ids by name.
+     */
+    protected Map<String, Integer> ids = new HashMap<String, Integer>();
+
+    /**
+     * Instantiates a new cluster index from the cluster mappings of a DSM.
+     *
+     * @param _cluster_start_position_mappings the _cluster_start_position_mappings
+     * @param _cluster_end_position_mappings   the _cluster_end_position_mappings
+     * @param size                             the number of elements of the DSM
+     */
+    public ClusterIndex(Map<String, Integer> _cluster_start_position_mappings,
+                        Map<String, Integer> _cluster_end_position_mappings,
+                        int size) {
+        final Map<String, Integer> startMappings = _cluster_start_position_mappings;
+        final Map<String, Integer> endMappings = _cluster_end_position_mappings;
+        String[] sorted = new String[startMappings.size()];
+        int count = 0;
+        for (String name : startMappings.keySet()) {
+            if (endMappings.containsKey(name)) {
+                sorted[count++] = name;
+            }
+        }
+        sorted = Arrays.copyOf(sorted, count);
+        Arrays.sort(sorted, new Comparator<String>() {
+            public int compare(String first, String second) {
+                int result = Integer.compare(startMappings.get(first), startMappings.get(second));
+                if (result == 0) {
+                    result = Integer.compare(endMappings.get(second), endMappings.get(first));
+                }
+                return result == 0 ? first.compareTo(second) : result;
+            }
+        });
+        this.names = sorted;
+        this.starts = new int[count];
+        this.ends = new int[count];
+        this.parents = new int[count];
+        this.removed = new boolean[count];
+        this.order = new int[count];
+        this.clusterCount = count;
+        this.clusterAt = new int[size];
+        for (int i = 0; i < count; i++) {
+            starts[i] = startMappings.get(sorted[i]);
+            ends[i] = endMappings.get(sorted[i]);
+            order[i] = i;
+            ids.put(sorted[i], i);
+        }
+        index();
+    }
+
+    /**
+     * Instantiates a new cluster index from the clusters of a DSM.
+     *
+     * @param dsm the DSM
+     */
+    public ClusterIndex(DesignStructureMatrix<?> dsm) {
+        this(dsm.getClusterStartPositionMappings(), dsm.getClusterEndPositionMappings(), dsm.getSize());
+    }
+
+    /**
+     * Computes the parents, the innermost cluster of each position and
+     * whether some clusters overlap, from the clusters in {@link #order}.
+     */
+    private void index() {
+        nested = false;
+        Arrays.fill(clusterAt, -1);
+        int[] stack = new int[clusterCount];
+        int depth = 0;
+        for (int k = 0; k < clusterCount; k++) {
+            int cluster = order[k];
+            if (k > 0 && starts[cluster] <= ends[order[k - 1]]) {
+                nested = true;
+            }
+            while (depth > 0 && ends[stack[depth - 1]] < ends[cluster]) {
+                depth--;
+            }
+            parents[cluster] = depth > 0 ? stack[depth - 1] : -1;
+            stack[depth++] = cluster;
+            int last = Math.min(ends[cluster], clusterAt.length - 1);
+            for (int i = Math.max(starts[cluster], 0); i <= last; i++) {
+                clusterAt[i] = cluster;
+            }
+        }
+    }
+
+    /**
+     * Gets the number of clusters.
+     *
+     * @return the number of clusters that have not been removed
+     */
+    public int getClusterCount() {
+        return clusterCount;
+    }
+
+    /**
+     * Gets the number of cluster ids, removed clusters included. Valid ids are
+     * 0 to this number minus one.
+     *
+     * @return the number of cluster ids
+     */
+    public int getIdCount() {
+        return names.length;
+    }
+
+    /**
+     * Gets the innermost cluster that contains a position.
+     *
+     * @param position the position
+     * @return the cluster, or -1 if no cluster contains the position
+     */
+    public int getCluster(int position) {
+        return clusterAt[position];
+    }
+
+    /**
+     * Gets the enclosing cluster of a cluster.
+     *
+     * @param cluster the cluster
+     * @return the enclosing cluster, or -1 if the cluster is not nested
+     */
+    public int getParent(int cluster) {
+        return parents[cluster];
+    }
+
+    /**
+     * Gets the id of a cluster.
+     *
+     * @param name the name of the cluster
+     * @return the cluster, or -1 if there is no cluster with that name
+     */
+    public int getId(String name) {
+        Integer id = ids.get(name);
+        return id == null || removed[id] ? -1 : id;
+    }
+
+    /**
+     * Gets the name of a cluster.
+     *
+     * @param cluster the cluster
+     * @return the name
+     */
+    public String getName(int cluster) {
+        return names[cluster];
+    }
+
+    /**
+     * Gets the start position of a cluster.
+     *
+     * @param cluster the cluster
+     * @return the start position
+     */
+    public int getStart(int cluster) {
+        return starts[cluster];
+    }
+
+    /**
+     * Gets the end position of a cluster, which is part of the cluster.
+     *
+     * @param cluster the cluster
+     * @return the end position
+     */
+    public int getEnd(int cluster) {
+        return ends[cluster];
+    }
+
+    /**
+     * Gets the number of positions in a cluster.
+     *
+     * @param cluster the cluster
+     * @return the cluster size
+     */
+    public int getClusterSize(int cluster) {
+        return ends[cluster] - starts[cluster] + 1;
+    }
+
+    /**
+     * Checks if a cluster contains a position, directly or through a nested
+     * cluster.
+     *
+     * @param position the position
+     * @param cluster  the cluster
+     * @return true, if the position is in the cluster
+     */
+    public boolean isInCluster(int position, int cluster) {
+        return starts[cluster] <= position && position <= ends[cluster];
+    }
+
+    /**
+     * Checks if a cluster has been removed.
+     *
+     * @param cluster the cluster
+     * @return true, if the cluster has been removed
+     */
+    public boolean isRemoved(int cluster) {
+        return removed[cluster];
+    }
+
+    /**
+     * Moves the element at a position to the end of another cluster, shifting
+     * the clusters in between by one position, and removes the cluster the
+     * element came from if it becomes empty. The caller is expected to shift
+     * the element in the DSM to the returned position.
+     *
+     * @param position the position of the element
+     * @param target   the cluster to move the element to
+     * @return the new position of the element
+     * @throws IllegalArgumentException if no cluster contains the position, or
+     *                                  if the target cluster does not exist
+     */
+    public int moveToCluster(int position, int target) {
+        if (position < 0 || position >= clusterAt.length) {
+            throw new IllegalArgumentException("No element at position " + position);
+        }
+        int source = clusterAt[position];
+        if (source < 0) {
+            throw new IllegalArgumentException("No cluster contains the position " + position);
+        }
+        if (target < 0 || target >= names.length || removed[target]) {
+            throw new IllegalArgumentException("No cluster with the id " + target);
+        }
+        if (source == target) {
+            return position;
+        }
+        int sourceStart = starts[source];
+        int targetStart = starts[target];
+        int sourceEnd = ends[source];
+        int targetEnd = ends[target];
+        if (sourceStart < targetStart) {
+            updateClusterPositions(sourceEnd, targetStart, -1);
+            starts[target] = targetStart - 1;
+            ends[source] = sourceEnd - 1;
+        } else {
+            updateClusterPositions(targetEnd, sourceStart, 1);
+            starts[source] = sourceStart + 1;
+            ends[target] = targetEnd + 1;
+        }
+        int to = ends[target];
+        if (nested) {
+            if (getClusterSize(source) == 0) {
+                removeFromOrder(source);
+            }
+            reorder();
+            index();
+        } else {
+            if (position < to) {
+                System.arraycopy(clusterAt, position + 1, clusterAt, position, to - position);
+            } else {
+                System.arraycopy(clusterAt, to, clusterAt, to + 1, position - to);
+            }
+            clusterAt[to] = target;
+            if (getClusterSize(source) == 0) {
+                removeFromOrder(source);
+            }
+        }
+        return to;
+    }
+
+    /**
+     * Shifts the start and end positions that are strictly between two
+     * positions.
+     *
+     * @param startIndex the start index
+     * @param endIndex   the end index
+     * @param offset     the offset
+     */
+    private void updateClusterPositions(int startIndex, int endIndex, int offset) {
+        int first = 0;
+        int last = clusterCount - 1;
+        if (!nested) {
+            first = firstStartAfter(startIndex);
+            last = firstStartAfter(endIndex - 1) - 1;
+        }
+        for (int k = first; k <= last; k++) {
+            int cluster = order[k];
+            if (starts[cluster] > startIndex && starts[cluster] < endIndex) {
+                starts[cluster] += offset;
+            }
+            if (ends[cluster] > startIndex && ends[cluster] < endIndex) {
+                ends[cluster] += offset;
+            }
+        }
+    }
+
+    /**
+     * Finds the first cluster in {@link #order} that starts after a position.
+     *
+     * @param position the position
+     * @return the index in {@link #order}
+     */
+    private int firstStartAfter(int position) {
+        int low = 0;
+        int high = clusterCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (starts[order[middle]] > position) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Marks a cluster as removed and takes it out of {@link #order}.
+     *
+     * @param cluster the cluster
+     */
+    private void removeFromOrder(int cluster) {
+        removed[cluster] = true;
+        for (int k = 0; k < clusterCount; k++) {
+            if (order[k] == cluster) {
+                System.arraycopy(order, k + 1, order, k, clusterCount - k - 1);
+                clusterCount--;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Sorts {@link #order} again after the positions have changed.
+     */
+    private void reorder() {
+        Integer[] sorted = new Integer[clusterCount];
+        for (int k = 0; k < clusterCount; k++) {
+            sorted[k] = order[k];
+        }
+        Arrays.sort(sorted, new Comparator<Integer>() {
+            public int compare(Integer first, Integer second) {
+                int result = Integer.compare(starts[first], starts[second]);
+                if (result == 0) {
+                    result = Integer.compare(ends[second], ends[first]);
+                }
+                return result == 0 ? names[first].compareTo(names[second]) : result;
+            }
+        });
+        for (int k = 0; k < clusterCount; k++) {
+            order[k] = sorted[k];
+        }
+    }
+
+    /**
+     * Writes the clusters back to the cluster mappings of a DSM. Removed
+     * clusters are removed from the mappings, and the other clusters are
+     * updated in place.
+     *
+     * @param dsm the DSM
+     */
+    public void writeTo(DesignStructureMatrix<?> dsm) {
+        Map<String, Integer> startMappings = dsm.getClusterStartPositionMappings();
+        Map<String, Integer> endMappings = dsm.getClusterEndPositionMappings();
+        for (int cluster = 0; cluster < names.length; cluster++) {
+            if (removed[cluster]) {
+                startMappings.remove(names[cluster]);
+                endMappings.remove(names[cluster]);
+            } else {
+                startMappings.put(names[cluster], starts[cluster]);
+                endMappings.put(names[cluster], ends[cluster]);
+            }
+        }
+    }
+}
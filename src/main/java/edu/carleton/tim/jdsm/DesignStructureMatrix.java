@@ -40,6 +40,7 @@ import org.jscience.mathematics.structure.Field;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Map;
+import java.util.function.IntConsumer;
 
 /**
  * Theis interface is a representation of a Design Structure Matrix (DSM).<br>
@@ -84,6 +85,37 @@ public interface DesignStructureMatrix<F extends Field<F>> {
      */
     public abstract Map<Integer, String> getPositionNameMappings();
 
+    /**
+     * Gets the name of the element at a position.
+     *
+     * @param position the position
+     * @return the name, or null if the position has no name
+     */
+    public default String getName(int position) {
+        return getPositionNameMappings().get(position);
+    }
+
+    /**
+     * Gets the position of an element.
+     *
+     * @param name the name
+     * @return the position, or -1 if there is no element with that name
+     */
+    public default int getPosition(String name) {
+        Integer position = getNamePositionMappings().get(name);
+        return position == null ? -1 : position;
+    }
+
+    /**
+     * Gets an index of the clusters by position. The index is a snapshot of the
+     * cluster mappings; it does not follow later changes to them.
+     *
+     * @return the cluster index
+     */
+    public default ClusterIndex getClusterIndex() {
+        return new ClusterIndex(this);
+    }
+
     /**
      * Gets the map.
      *
@@ -91,6 +123,130 @@ public interface DesignStructureMatrix<F extends Field<F>> {
      */
     public abstract F[][] getMap();
 
+    /**
+     * Gets the number of elements of the DSM.
+     *
+     * @return the number of rows (and columns) of the DSM
+     */
+    public default int getSize() {
+        return getMap().length;
+    }
+
+    /**
+     * Gets the value of a single cell.
+     *
+     * @param row    the row
+     * @param column the column
+     * @return the value in the cell at the given row and column
+     */
+    public default F get(int row, int column) {
+        return getMap()[row][column];
+    }
+
+    /**
+     * Sets the value of a single cell.
+     *
+     * @param row    the row
+     * @param column the column
+     * @param value  the new value of the cell
+     */
+    public default void set(int row, int column, F value) {
+        getMap()[row][column] = value;
+    }
+
+    /**
+     * Checks if a cell holds a dependency, that is a value other than null and
+     * the zero of the field. Implementations should override it with a test
+     * on their own storage.
+     *
+     * @param row    the row
+     * @param column the column
+     * @return true, if the element at the row depends on the element at the
+     * column
+     */
+    public default boolean hasDependency(int row, int column) {
+        F value = get(row, column);
+        if (value == null) {
+            return false;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue() != 0;
+        }
+        // x is the zero of an additive group if and only if x + (-x) = -x
+        F opposite = value.opposite();
+        return !value.plus(opposite).equals(opposite);
+    }
+
+    /**
+     * Calls an action with the column of each dependency in a row, that is with
+     * every element the element at the row depends on. The columns are not
+     * necessarily given in order. The implementations of this library do not
+     * allocate while iterating, but a capturing lambda passed as the action is
+     * itself allocated at each call.
+     *
+     * @param row    the row
+     * @param action the action, called with each column
+     */
+    public default void forEachDependencyInRow(int row, IntConsumer action) {
+        int size = getSize();
+        for (int column = 0; column < size; column++) {
+            if (hasDependency(row, column)) {
+                action.accept(column);
+            }
+        }
+    }
+
+    /**
+     * Calls an action with the row of each dependency in a column, that is with
+     * every element that depends on the element at the column. The rows are not
+     * necessarily given in order.
+     *
+     * @param column the column
+     * @param action the action, called with each row
+     */
+    public default void forEachDependencyInColumn(int column, IntConsumer action) {
+        int size = getSize();
+        for (int row = 0; row < size; row++) {
+            if (hasDependency(row, column)) {
+                action.accept(row);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of dependencies in a row.
+     *
+     * @param row the row
+     * @return the number of elements the element at the row depends on
+     */
+    public default int getRowDegree(int row) {
+        int size = getSize();
+        int degree = 0;
+        for (int column = 0; column < size; column++) {
+            if (hasDependency(row, column)) {
+                degree++;
+            }
+        }
+        return degree;
+    }
+
+    /**
+     * Gets the number of dependencies in a column.
+     *
+     * @param column the column
+     * @return the number of elements that depend on the element at the column
+     */
+    public default int getColumnDegree(int column) {
+        int size = getSize();
+        int degree = 0;
+        for (int row = 0; row < size; row++) {
+            if (hasDependency(row, column)) {
+                degree++;
+            }
+        }
+        return degree;
+    }
+
     /**
      * Pretty print.
      */
@@ -117,6 +273,29 @@ public interface DesignStructureMatrix<F extends Field<F>> {
      */
     public abstract void swap(int from, int to);
 
+    /**
+     * Reorders the whole DSM in a single pass. After the call, position p holds
+     * the element that was at position <code>order[p]</code> before the call.
+     * Cluster mappings are positions and are left unchanged, as with
+     * {@link #swap(int, int)}.
+     *
+     * @param order a permutation of the positions 0..N-1
+     */
+    public default void applyPermutation(int[] order) {
+        DesignStructureMatrix<F> source = clone();
+        int size = getSize();
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                set(i, j, source.get(order[i], order[j]));
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            String name = source.getName(order[i]);
+            getPositionNameMappings().put(i, name);
+            getNamePositionMappings().put(name, i);
+        }
+    }
+
     /**
      * Clone.
      *
@@ -131,10 +310,10 @@ public interface DesignStructureMatrix<F extends Field<F>> {
      */
     public default DesignStructureMatrix<F> transpose() {
         DesignStructureMatrix<F> transposed = clone();
-        int size = getMap().length;
+        int size = getSize();
         for (int i = 0; i < size; i++) {
             for (int j = 0; j < size; j++) {
-                transposed.getMap()[j][i] = this.getMap()[i][j];
+                transposed.set(j, i, this.get(i, j));
             }
         }
         return transposed;
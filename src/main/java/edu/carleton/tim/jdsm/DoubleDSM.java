@@ -0,0 +1,601 @@
+/*
+Copyright (c) 2008, Roberto Milev
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or 
+without modification, are permitted provided that the following 
+conditions are met:
+
+    * Redistributions of source code must retain the above 
+      copyright notice, this list of conditions and the following 
+      disclaimer.
+    * Redistributions in binary form must reproduce the above 
+      copyright notice, this list of conditions and the following 
+      disclaimer in the documentation and/or other materials 
+      provided with the distribution.
+    * Neither the name of the Carleton University nor the names 
+      of its contributors may be used to endorse or promote 
+      products derived from this software without specific prior 
+      written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR 
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF 
+ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+*/
+package edu.carleton.tim.jdsm;
+
+import javolution.xml.XMLFormat;
+import javolution.xml.XMLObjectReader;
+import javolution.xml.XMLObjectWriter;
+import javolution.xml.stream.XMLStreamException;
+import org.apache.log4j.Logger;
+import org.jscience.mathematics.number.Real;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * Implementation of {@link DesignStructureMatrix} for values of the algebraic
+ * field {@link Real} that stores the cells as primitive doubles. <br>
+ * <br>
+ * The cells are kept in a single <code>double[]</code> in row-major order, so
+ * the cell at row i and column j is at index <code>i * N + j</code>.
+ * {@link #getValue(int, int)} and {@link #setValue(int, int, double)} read and
+ * write cells without allocating; {@link #get(int, int)} and
+ * {@link #set(int, int, Real)} convert from and to {@link Real} and are only
+ * kept for compatibility, as is {@link #getMap()}, which returns a detached
+ * copy. The flat array limits the DSM to 46340 elements. <br>
+ * <br>
+ * The XML format is the one of {@link RealNumberDSM}, so files can be
+ * exchanged between the two classes.
+ */
+public class DoubleDSM implements DesignStructureMatrix<Real> {
+
+    /**
+     * The logger.
+     */
+    private static Logger logger = Logger.getLogger(DoubleDSM.class);
+
+    /**
+     * The largest number of elements the flat array can hold.
+     */
+    public static final int MAXIMUM_SIZE = 46340;
+
+    /**
+     * The cluster end position mappings.
+     */
+    protected Map<String, Integer> clusterEndPositionMappings = new HashMap<String, Integer>();
+
+    /**
+     * The cluster start position mappings.
+     */
+    protected Map<String, Integer> clusterStartPositionMappings = new HashMap<String, Integer>();
+
+    /**
+     * The names and positions of the elements.
+     */
+    protected ElementDictionary elements = new ElementDictionary();
+
+    /**
+     * The number of elements.
+     */
+    protected int size;
+
+    /**
+     * The cells, in row-major order.
+     */
+    protected double[] values = new double[0];
+
+    /**
+     * Default constructor.
+     */
+    public DoubleDSM() {
+    }
+
+    /**
+     * Instantiates a new double dsm with all cells set to zero.
+     *
+     * @param _cluster_end_position_mappings   the _cluster_end_position_mappings
+     * @param _cluster_start_position_mappings the _cluster_start_position_mappings
+     * @param _name_position_mappings          the _name_position_mappings
+     * @param _position_name_mappings          the _position_name_mappings
+     * @param size                             the number of elements
+     */
+    public DoubleDSM(
+            Map<String, Integer> _cluster_end_position_mappings,
+            Map<String, Integer> _cluster_start_position_mappings,
+            Map<String, Integer> _name_position_mappings,
+            Map<Integer, String> _position_name_mappings,
+            int size) {
+        if (size > MAXIMUM_SIZE) {
+            throw new IllegalArgumentException("A DoubleDSM holds at most " + MAXIMUM_SIZE + " elements: " + size);
+        }
+        this.clusterEndPositionMappings = _cluster_end_position_mappings;
+        this.clusterStartPositionMappings = _cluster_start_position_mappings;
+        this.elements = new ElementDictionary(_position_name_mappings, _name_position_mappings);
+        this.size = size;
+        this.values = new double[size * size];
+    }
+
+    /**
+     * Instantiates a new double dsm with the same elements, clusters and
+     * values as the given DSM, such as a {@link RealNumberDSM}.
+     *
+     * @param dsm the DSM to copy
+     */
+    public DoubleDSM(DesignStructureMatrix<Real> dsm) {
+        this(new HashMap<String, Integer>(dsm.getClusterEndPositionMappings()),
+                new HashMap<String, Integer>(dsm.getClusterStartPositionMappings()),
+                new HashMap<String, Integer>(dsm.getNamePositionMappings()),
+                new HashMap<Integer, String>(dsm.getPositionNameMappings()),
+                dsm.getSize());
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                values[i * size + j] = dsm.get(i, j).doubleValue();
+            }
+        }
+    }
+
+    /**
+     * Converts this DSM to a {@link RealNumberDSM}.
+     *
+     * @return a real number DSM with the same elements, clusters and values
+     */
+    public RealNumberDSM toRealNumberDSM() {
+        return new RealNumberDSM(new HashMap<String, Integer>(clusterEndPositionMappings),
+                new HashMap<String, Integer>(clusterStartPositionMappings),
+                elements.getNamePositionMappings(),
+                elements.getPositionNameMappings(),
+                getMap());
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getClusterEndPositionMappings()
+     */
+    public Map<String, Integer> getClusterEndPositionMappings() {
+        return clusterEndPositionMappings;
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getClusterStartPositionMappings()
+     */
+    public Map<String, Integer> getClusterStartPositionMappings() {
+        return clusterStartPositionMappings;
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getNamePositionMappings()
+     */
+    public Map<String, Integer> getNamePositionMappings() {
+        return elements.getNamePositionMappings();
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getPositionNameMappings()
+     */
+    public Map<Integer, String> getPositionNameMappings() {
+        return elements.getPositionNameMappings();
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getName(int)
+     */
+    public String getName(int position) {
+        return elements.getName(position);
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getPosition(java.lang.String)
+     */
+    public int getPosition(String name) {
+        return elements.getPosition(name);
+    }
+
+    /**
+     * Gets a detached copy of the matrix. Changes to the returned array are not
+     * reflected in this DSM; use {@link #setValue(int, int, double)} instead.
+     *
+     * @return the map
+     */
+    public Real[][] getMap() {
+        Real[][] map = new Real[size][size];
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                map[i][j] = Real.valueOf(values[i * size + j]);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Gets the cells in row-major order. The array is not copied.
+     *
+     * @return the values
+     */
+    public double[] getValues() {
+        return values;
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getSize()
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Gets the value of a single cell.
+     *
+     * @param row    the row
+     * @param column the column
+     * @return the value
+     */
+    public double getValue(int row, int column) {
+        return values[row * size + column];
+    }
+
+    /**
+     * Sets the value of a single cell.
+     *
+     * @param row    the row
+     * @param column the column
+     * @param value  the value
+     */
+    public void setValue(int row, int column, double value) {
+        values[row * size + column] = value;
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#get(int, int)
+     */
+    public Real get(int row, int column) {
+        return Real.valueOf(values[row * size + column]);
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#set(int, int, java.lang.Object)
+     */
+    public void set(int row, int column, Real value) {
+        values[row * size + column] = value.doubleValue();
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#hasDependency(int, int)
+     */
+    public boolean hasDependency(int row, int column) {
+        return values[row * size + column] != 0;
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#forEachDependencyInRow(int, java.util.function.IntConsumer)
+     */
+    public void forEachDependencyInRow(int row, IntConsumer action) {
+        int offset = row * size;
+        for (int column = 0; column < size; column++) {
+            if (values[offset + column] != 0) {
+                action.accept(column);
+            }
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#forEachDependencyInColumn(int, java.util.function.IntConsumer)
+     */
+    public void forEachDependencyInColumn(int column, IntConsumer action) {
+        for (int row = 0, index = column; row < size; row++, index += size) {
+            if (values[index] != 0) {
+                action.accept(row);
+            }
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getRowDegree(int)
+     */
+    public int getRowDegree(int row) {
+        int offset = row * size;
+        int degree = 0;
+        for (int column = 0; column < size; column++) {
+            if (values[offset + column] != 0) {
+                degree++;
+            }
+        }
+        return degree;
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getColumnDegree(int)
+     */
+    public int getColumnDegree(int column) {
+        int degree = 0;
+        for (int row = 0, index = column; row < size; row++, index += size) {
+            if (values[index] != 0) {
+                degree++;
+            }
+        }
+        return degree;
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.dsm.DesignStructureMatrix#prettyPrint()
+     */
+    public void prettyPrint() {
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                System.out.print("\t" + values[i * size + j]);
+            }
+            System.out.println("");
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.dsm.DesignStructureMatrix#resetClusters()
+     */
+    public void resetClusters() {
+        this.clusterStartPositionMappings = new HashMap<String, Integer>();
+        this.clusterEndPositionMappings = new HashMap<String, Integer>();
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.dsm.DesignStructureMatrix#shift(int, int)
+     */
+    public void shift(int from, int to) {
+        if (from == to) {
+            return;
+        }
+        double[] movedRow = new double[size];
+        System.arraycopy(values, from * size, movedRow, 0, size);
+        if (from < to) {
+            System.arraycopy(values, (from + 1) * size, values, from * size, (to - from) * size);
+            System.arraycopy(movedRow, 0, values, to * size, size);
+            for (int i = 0; i < size; i++) {
+                int row = i * size;
+                double moved = values[row + from];
+                System.arraycopy(values, row + from + 1, values, row + from, to - from);
+                values[row + to] = moved;
+            }
+        } else {
+            System.arraycopy(values, to * size, values, (to + 1) * size, (from - to) * size);
+            System.arraycopy(movedRow, 0, values, to * size, size);
+            for (int i = 0; i < size; i++) {
+                int row = i * size;
+                double moved = values[row + from];
+                System.arraycopy(values, row + to, values, row + to + 1, from - to);
+                values[row + to] = moved;
+            }
+        }
+        elements.shift(from, to);
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.dsm.DesignStructureMatrix#swap(int, int)
+     */
+    public void swap(int from, int to) {
+        double temp;
+        int fromRow = from * size;
+        int toRow = to * size;
+        for (int i = 0; i < size; i++) {
+            temp = values[fromRow + i];
+            values[fromRow + i] = values[toRow + i];
+            values[toRow + i] = temp;
+        }
+        for (int i = 0; i < size; i++) {
+            int row = i * size;
+            temp = values[row + from];
+            values[row + from] = values[row + to];
+            values[row + to] = temp;
+        }
+
+        elements.swap(from, to);
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#applyPermutation(int[])
+     */
+    public void applyPermutation(int[] order) {
+        double[] permuted = new double[values.length];
+        for (int i = 0; i < size; i++) {
+            int row = order[i] * size;
+            for (int j = 0; j < size; j++) {
+                permuted[i * size + j] = values[row + order[j]];
+            }
+        }
+        elements.applyPermutation(order);
+        values = permuted;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#clone()
+     */
+    public DesignStructureMatrix<Real> clone() {
+        DoubleDSM clone = new DoubleDSM();
+        clone.clusterEndPositionMappings = new HashMap<String, Integer>(clusterEndPositionMappings);
+        clone.clusterStartPositionMappings = new HashMap<String, Integer>(clusterStartPositionMappings);
+        clone.elements = elements.clone();
+        clone.size = size;
+        clone.values = values.clone();
+        return clone;
+    }
+
+    /**
+     * Transposes the matrix in blocks of 64x64 cells.
+     *
+     * @return a transposed design structure matrix; flipped along the diagonal
+     */
+    public DesignStructureMatrix<Real> transpose() {
+        DoubleDSM transposed = (DoubleDSM) clone();
+        for (int blockRow = 0; blockRow < size; blockRow += 64) {
+            for (int blockColumn = 0; blockColumn < size; blockColumn += 64) {
+                int rowEnd = Math.min(blockRow + 64, size);
+                int columnEnd = Math.min(blockColumn + 64, size);
+                for (int i = blockRow; i < rowEnd; i++) {
+                    for (int j = blockColumn; j < columnEnd; j++) {
+                        transposed.values[j * size + i] = values[i * size + j];
+                    }
+                }
+            }
+        }
+        return transposed;
+    }
+
+    /**
+     * Serializes the object to the XML format of {@link RealNumberDSM}.
+     *
+     * @param outputStream stream to write XML to
+     * @throws XMLStreamException the XML stream exception
+     */
+    public void saveToXml(OutputStream outputStream) throws XMLStreamException {
+        XMLObjectWriter writer = XMLObjectWriter.newInstance(outputStream);
+        writer.setIndentation("\t");
+        writer.write(this, RealNumberDSM.class.getCanonicalName(), DoubleDSM.class);
+        writer.close();
+        logger.info("Saved DSM to XML");
+    }
+
+    /**
+     * Deserializes the object from the XML format of {@link RealNumberDSM}.
+     *
+     * @param outputStream stream to read XML from
+     * @throws XMLStreamException the XML stream exception
+     */
+    public void loadFromXml(InputStream outputStream) throws XMLStreamException {
+        XMLObjectReader reader = XMLObjectReader.newInstance(outputStream);
+        DoubleDSM dsm = reader.read(RealNumberDSM.class.getCanonicalName(), DoubleDSM.class);
+        reader.close();
+        clusterEndPositionMappings = dsm.clusterEndPositionMappings;
+        clusterStartPositionMappings = dsm.clusterStartPositionMappings;
+        elements = dsm.elements;
+        size = dsm.size;
+        values = dsm.values;
+        logger.info("Loaded DSM from XML");
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        StringBuilder result = new StringBuilder("\n");
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                result.append(values[i * size + j]).append('\t');
+            }
+            result.append('\n');
+        }
+        return result.toString();
+    }
+
+    /**
+     * The Constant XML. The elements are the same as in the format of
+     * {@link RealNumberDSM}.
+     */
+    protected static final XMLFormat<DoubleDSM> XML = new XMLFormat<DoubleDSM>(
+            DoubleDSM.class) {
+
+        @Override
+        public void read(InputElement xml, DoubleDSM dsm)
+                throws XMLStreamException {
+            dsm.clusterEndPositionMappings = xml.get("clusterEndPositionMappings");
+            dsm.clusterStartPositionMappings = xml.get("clusterStartPositionMappings");
+            Map<String, Integer> namePositionMappings = xml.get("namePositionMappings");
+            Map<Integer, String> positionNameMappings = xml.get("positionNameMappings");
+            dsm.elements = new ElementDictionary(positionNameMappings, namePositionMappings);
+            RealArray map = xml.get("map", RealArray.class);
+            dsm.size = map.size;
+            dsm.values = map.values;
+        }
+
+        @Override
+        public void write(DoubleDSM dsm, OutputElement xml)
+                throws XMLStreamException {
+            xml.add(dsm.clusterEndPositionMappings, "clusterEndPositionMappings");
+            xml.add(dsm.clusterStartPositionMappings, "clusterStartPositionMappings");
+            xml.add(new HashMap<String, Integer>(dsm.elements.getNamePositionMappings()), "namePositionMappings");
+            xml.add(new HashMap<Integer, String>(dsm.elements.getPositionNameMappings()), "positionNameMappings");
+            xml.add(new RealArray(dsm.size, dsm.values), "map", RealArray.class);
+        }
+    };
+
+    /**
+     * The cells of a {@link DoubleDSM}, written and read as the
+     * <code>Real[][]</code> of a {@link RealNumberDSM} one row at a time.
+     */
+    private static class RealArray {
+
+        /**
+         * The number of elements.
+         */
+        private int size;
+
+        /**
+         * The cells, in row-major order.
+         */
+        private double[] values;
+
+        /**
+         * Instantiates a new real array.
+         *
+         * @param size   the number of elements
+         * @param values the cells, in row-major order
+         */
+        private RealArray(int size, double[] values) {
+            this.size = size;
+            this.values = values;
+        }
+
+        /**
+         * The Constant XML.
+         */
+        protected static final XMLFormat<RealArray> XML = new XMLFormat<RealArray>(
+                RealArray.class) {
+
+            @Override
+            public RealArray newInstance(Class<RealArray> cls, InputElement xml)
+                    throws XMLStreamException {
+                int size = xml.getAttribute("length", 0);
+                if (size > MAXIMUM_SIZE) {
+                    throw new XMLStreamException("A DoubleDSM holds at most " + MAXIMUM_SIZE + " elements: " + size);
+                }
+                return new RealArray(size, new double[size * size]);
+            }
+
+            @Override
+            public void read(InputElement xml, RealArray array)
+                    throws XMLStreamException {
+                for (int i = 0; i < array.size; i++) {
+                    Real[] row = xml.getNext();
+                    for (int j = 0; j < array.size; j++) {
+                        array.values[i * array.size + j] = row[j].doubleValue();
+                    }
+                }
+            }
+
+            @Override
+            public void write(RealArray array, OutputElement xml)
+                    throws XMLStreamException {
+                xml.setAttribute("class", Real[][].class.getName());
+                xml.setAttribute("componentType", Real[].class.getName());
+                xml.setAttribute("length", array.size);
+                Real[] row = new Real[array.size];
+                for (int i = 0; i < array.size; i++) {
+                    for (int j = 0; j < array.size; j++) {
+                        row[j] = Real.valueOf(array.values[i * array.size + j]);
+                    }
+                    xml.add(row);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,587 @@
+/*
+Copyright (c) 2008, Roberto Milev
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or 
+without modification, are permitted provided that the following 
+conditions are met:
+
+    * Redistributions of source code must retain the above 
+      copyright notice, this list of conditions and the following 
+      disclaimer.
+    * Redistributions in binary form must reproduce the above 
+      copyright notice, this list of conditions and the following 
+      disclaimer in the documentation and/or other materials 
+      provided with the distribution.
+    * Neither the name of the Carleton University nor the names 
+      of its contributors may be used to endorse or promote 
+      products derived from this software without specific prior 
+      written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR 
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF 
+ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+*/
+package edu.carleton.tim.jdsm;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+
+/**
+ * The names of the elements of a DSM and their positions. <br>
+ * <br>
+ * The names are kept in a <code>String[]</code> indexed by position, and the
+ * positions in an open addressing hash table keyed by name, so that lookups in
+ * both directions and {@link #swap(int, int)} are O(1) and do not box. <br>
+ * <br>
+ * {@link #getPositionNameMappings()} and {@link #getNamePositionMappings()}
+ * expose the two directions as {@link Map} views, for code written against the
+ * mappings of {@link DesignStructureMatrix}. Like the two maps they replace, a
+ * write through one view only updates its own direction.
+ */
+public class ElementDictionary {
+
+    /**
+     * The name of the element at each position.
+     */
+    protected String[] names;
+
+    /**
+     * The number of positions.
+     */
+    protected int size;
+
+    /**
+     * The number of positions that have a name.
+     */
+    protected int nameCount;
+
+    /**
+     * The hash table keys.
+     */
+    protected String[] keys;
+
+    /**
+     * The hash table values.
+     */
+    protected int[] values;
+
+    /**
+     * The number of names in the hash table.
+     */
+    protected int keyCount;
+
+    /**
+     * The position name mappings view.
+     */
+    private Map<Integer, String> positionNameMappings;
+
+    /**
+     * The name position mappings view.
+     */
+    private Map<String, Integer> namePositionMappings;
+
+    /**
+     * Instantiates a new empty element dictionary.
+     */
+    public ElementDictionary() {
+        this(0);
+    }
+
+    /**
+     * Instantiates a new element dictionary with room for the given number of
+     * elements.
+     *
+     * @param size the number of elements
+     */
+    public ElementDictionary(int size) {
+        this.names = new String[size];
+        int capacity = 4;
+        while (capacity < size * 2) {
+            capacity <<= 1;
+        }
+        this.keys = new String[capacity];
+        this.values = new int[capacity];
+    }
+
+    /**
+     * Instantiates a new element dictionary from the mappings of a DSM.
+     *
+     * @param _position_name_mappings the _position_name_mappings
+     * @param _name_position_mappings the _name_position_mappings
+     */
+    public ElementDictionary(Map<Integer, String> _position_name_mappings,
+                             Map<String, Integer> _name_position_mappings) {
+        this(_position_name_mappings.size());
+        for (Map.Entry<Integer, String> entry : _position_name_mappings.entrySet()) {
+            setName(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, Integer> entry : _name_position_mappings.entrySet()) {
+            setPosition(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Gets the number of positions, that is one more than the highest position
+     * that has been given a name or moved.
+     *
+     * @return the number of positions
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Gets the name of the element at a position.
+     *
+     * @param position the position
+     * @return the name, or null if the position has no name
+     */
+    public String getName(int position) {
+        return position >= 0 && position < size ? names[position] : null;
+    }
+
+    /**
+     * Sets the name of the element at a position. The position of the name is
+     * not updated.
+     *
+     * @param position the position
+     * @param name     the name, or null to remove the name of the position
+     * @return the previous name of the position
+     */
+    public String setName(int position, String name) {
+        if (position < 0) {
+            throw new IndexOutOfBoundsException("Negative position: " + position);
+        }
+        if (position >= size) {
+            if (name == null) {
+                return null;
+            }
+            if (position >= names.length) {
+                names = Arrays.copyOf(names, Math.max(position + 1, names.length * 2));
+            }
+            size = position + 1;
+        }
+        String previous = names[position];
+        names[position] = name;
+        if (previous == null && name != null) {
+            nameCount++;
+        } else if (previous != null && name == null) {
+            nameCount--;
+        }
+        return previous;
+    }
+
+    /**
+     * Gets the position of an element.
+     *
+     * @param name the name
+     * @return the position, or -1 if there is no element with that name
+     */
+    public int getPosition(String name) {
+        if (name == null) {
+            return -1;
+        }
+        int mask = keys.length - 1;
+        for (int slot = home(name); keys[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot].equals(name)) {
+                return values[slot];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Sets the position of an element. The name of the position is not
+     * updated.
+     *
+     * @param name     the name
+     * @param position the position
+     * @return the previous position of the element, or -1 if it had none
+     */
+    public int setPosition(String name, int position) {
+        if (name == null) {
+            throw new NullPointerException("Element names cannot be null");
+        }
+        int mask = keys.length - 1;
+        int slot = home(name);
+        for (; keys[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot].equals(name)) {
+                int previous = values[slot];
+                values[slot] = position;
+                return previous;
+            }
+        }
+        if ((keyCount + 1) * 2 > keys.length) {
+            rehash(keys.length << 1);
+            return setPosition(name, position);
+        }
+        keys[slot] = name;
+        values[slot] = position;
+        keyCount++;
+        return -1;
+    }
+
+    /**
+     * Removes an element from the hash table. The name of its position is not
+     * updated.
+     *
+     * @param name the name
+     * @return the position of the element, or -1 if it had none
+     */
+    public int removePosition(String name) {
+        if (name == null) {
+            return -1;
+        }
+        int mask = keys.length - 1;
+        for (int slot = home(name); keys[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot].equals(name)) {
+                int previous = values[slot];
+                removeSlot(slot);
+                return previous;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Swaps the elements at two positions.
+     *
+     * @param from the from
+     * @param to   the to
+     */
+    public void swap(int from, int to) {
+        ensureSize(Math.max(from, to) + 1);
+        String fromName = names[from];
+        String toName = names[to];
+        names[from] = toName;
+        names[to] = fromName;
+        if (fromName != null) {
+            setPosition(fromName, to);
+        }
+        if (toName != null) {
+            setPosition(toName, from);
+        }
+    }
+
+    /**
+     * Moves the element at position <code>from</code> to position
+     * <code>to</code>, and the elements in between by one position towards
+     * <code>from</code>.
+     *
+     * @param from the from
+     * @param to   the to
+     */
+    public void shift(int from, int to) {
+        ensureSize(Math.max(from, to) + 1);
+        String moved = names[from];
+        if (from < to) {
+            System.arraycopy(names, from + 1, names, from, to - from);
+        } else {
+            System.arraycopy(names, to, names, to + 1, from - to);
+        }
+        names[to] = moved;
+        for (int i = Math.min(from, to); i <= Math.max(from, to); i++) {
+            if (names[i] != null) {
+                setPosition(names[i], i);
+            }
+        }
+    }
+
+    /**
+     * Reorders the elements. After the call, position p holds the element
+     * that was at position <code>order[p]</code> before the call.
+     *
+     * @param order a permutation of the positions 0..N-1
+     */
+    public void applyPermutation(int[] order) {
+        ensureSize(order.length);
+        String[] permuted = new String[names.length];
+        for (int i = 0; i < order.length; i++) {
+            permuted[i] = names[order[i]];
+        }
+        names = permuted;
+        for (int i = 0; i < order.length; i++) {
+            if (names[i] != null) {
+                setPosition(names[i], i);
+            }
+        }
+    }
+
+    /**
+     * Gets a view of the names by position. The view writes through to this
+     * dictionary.
+     *
+     * @return the position name mappings
+     */
+    public Map<Integer, String> getPositionNameMappings() {
+        if (positionNameMappings == null) {
+            positionNameMappings = new PositionNameView();
+        }
+        return positionNameMappings;
+    }
+
+    /**
+     * Gets a view of the positions by name. The view writes through to this
+     * dictionary.
+     *
+     * @return the name position mappings
+     */
+    public Map<String, Integer> getNamePositionMappings() {
+        if (namePositionMappings == null) {
+            namePositionMappings = new NamePositionView();
+        }
+        return namePositionMappings;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#clone()
+     */
+    public ElementDictionary clone() {
+        ElementDictionary clone = new ElementDictionary(0);
+        clone.names = names.clone();
+        clone.size = size;
+        clone.nameCount = nameCount;
+        clone.keys = keys.clone();
+        clone.values = values.clone();
+        clone.keyCount = keyCount;
+        return clone;
+    }
+
+    /**
+     * Makes room for positions without a name up to the given size.
+     *
+     * @param size the number of positions
+     */
+    private void ensureSize(int size) {
+        if (size > names.length) {
+            names = Arrays.copyOf(names, size);
+        }
+        this.size = Math.max(this.size, size);
+    }
+
+    /**
+     * Gets the home slot of a name in the hash table.
+     *
+     * @param name the name
+     * @return the slot
+     */
+    private int home(String name) {
+        int hash = name.hashCode() * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & (keys.length - 1);
+    }
+
+    /**
+     * Rebuilds the hash table with the given capacity.
+     *
+     * @param capacity the capacity, a power of two
+     */
+    private void rehash(int capacity) {
+        String[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new String[capacity];
+        values = new int[capacity];
+        keyCount = 0;
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldKeys[slot] != null) {
+                setPosition(oldKeys[slot], oldValues[slot]);
+            }
+        }
+    }
+
+    /**
+     * Empties a slot of the hash table and moves back the entries that
+     * follow it in the same probe sequence.
+     *
+     * @param slot the slot
+     */
+    private void removeSlot(int slot) {
+        int mask = keys.length - 1;
+        int gap = slot;
+        for (int i = (slot + 1) & mask; keys[i] != null; i = (i + 1) & mask) {
+            int home = home(keys[i]);
+            boolean stays = gap < i ? gap < home && home <= i : gap < home || home <= i;
+            if (!stays) {
+                keys[gap] = keys[i];
+                values[gap] = values[i];
+                gap = i;
+            }
+        }
+        keys[gap] = null;
+        keyCount--;
+    }
+
+    /**
+     * View of the names by position.
+     */
+    private class PositionNameView extends AbstractMap<Integer, String> {
+
+        @Override
+        public String get(Object key) {
+            return key instanceof Integer ? getName((Integer) key) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public String put(Integer key, String value) {
+            return setName(key, value);
+        }
+
+        @Override
+        public String remove(Object key) {
+            return key instanceof Integer ? setName((Integer) key, null) : null;
+        }
+
+        @Override
+        public void clear() {
+            names = new String[0];
+            size = 0;
+            nameCount = 0;
+        }
+
+        @Override
+        public int size() {
+            return nameCount;
+        }
+
+        @Override
+        public Set<Entry<Integer, String>> entrySet() {
+            return new AbstractSet<Entry<Integer, String>>() {
+
+                @Override
+                public Iterator<Entry<Integer, String>> iterator() {
+                    return new Iterator<Entry<Integer, String>>() {
+
+                        private int position = advance(0);
+
+                        private int advance(int from) {
+                            while (from < size && names[from] == null) {
+                                from++;
+                            }
+                            return from;
+                        }
+
+                        public boolean hasNext() {
+                            return position < size;
+                        }
+
+                        public Entry<Integer, String> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            Entry<Integer, String> entry =
+                                    new SimpleImmutableEntry<Integer, String>(position, names[position]);
+                            position = advance(position + 1);
+                            return entry;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return nameCount;
+                }
+            };
+        }
+    }
+
+    /**
+     * View of the positions by name.
+     */
+    private class NamePositionView extends AbstractMap<String, Integer> {
+
+        @Override
+        public Integer get(Object key) {
+            int position = key instanceof String ? getPosition((String) key) : -1;
+            return position < 0 ? null : position;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public Integer put(String key, Integer value) {
+            int previous = setPosition(key, value);
+            return previous < 0 ? null : previous;
+        }
+
+        @Override
+        public Integer remove(Object key) {
+            int previous = key instanceof String ? removePosition((String) key) : -1;
+            return previous < 0 ? null : previous;
+        }
+
+        @Override
+        public void clear() {
+            Arrays.fill(keys, null);
+            keyCount = 0;
+        }
+
+        @Override
+        public int size() {
+            return keyCount;
+        }
+
+        @Override
+        public Set<Entry<String, Integer>> entrySet() {
+            return new AbstractSet<Entry<String, Integer>>() {
+
+                @Override
+                public Iterator<Entry<String, Integer>> iterator() {
+                    return new Iterator<Entry<String, Integer>>() {
+
+                        private int slot = advance(0);
+
+                        private int advance(int from) {
+                            while (from < keys.length && keys[from] == null) {
+                                from++;
+                            }
+                            return from;
+                        }
+
+                        public boolean hasNext() {
+                            return slot < keys.length;
+                        }
+
+                        public Entry<String, Integer> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            Entry<String, Integer> entry =
+                                    new SimpleImmutableEntry<String, Integer>(keys[slot], values[slot]);
+                            slot = advance(slot + 1);
+                            return entry;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return keyCount;
+                }
+            };
+        }
+    }
+}
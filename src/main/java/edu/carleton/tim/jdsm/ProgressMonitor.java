@@ -0,0 +1,254 @@
+/*
+Copyright (c) 2008, Roberto Milev
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or 
+without modification, are permitted provided that the following 
+conditions are met:
+
+    * Redistributions of source code must retain the above 
+      copyright notice, this list of conditions and the following 
+      disclaimer.
+    * Redistributions in binary form must reproduce the above 
+      copyright notice, this list of conditions and the following 
+      disclaimer in the documentation and/or other materials 
+      provided with the distribution.
+    * Neither the name of the Carleton University nor the names 
+      of its contributors may be used to endorse or promote 
+      products derived from this software without specific prior 
+      written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR 
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF 
+ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+*/
+package edu.carleton.tim.jdsm;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Bounds the running time of an analysis and reports its progress. <br>
+ * <br>
+ * A monitor is given to a long running operation, such as loading a DSM or
+ * computing its propagation or clustered cost. The operation calls
+ * {@link #isStopped()} in its main loop, which costs a volatile read and, if
+ * a deadline is set, a call to {@link System#nanoTime()}. When the monitor is
+ * canceled, from any thread, or when its deadline has passed, the operation
+ * returns early with the best result it has so far; the operation documents
+ * what that result is. Calling {@link #isStopped()} after the operation tells
+ * whether its result is partial. <br>
+ * <br>
+ * The operation also tells the monitor what it is doing with
+ * {@link #begin(String, long)} and how far it is with {@link #worked(long)},
+ * which calls the progress listener, if any. The listener is called from the
+ * threads of the operation, so it should return quickly. A monitor is meant
+ * for a single operation at a time.
+ */
+public class ProgressMonitor {
+
+    /**
+     * Receives the progress of an operation.
+     */
+    public interface ProgressListener {
+
+        /**
+         * Called when the operation has done more work.
+         *
+         * @param task  the description of the current task
+         * @param done  the units of work done in the task
+         * @param total the units of work of the task
+         */
+        public void progressed(String task, long done, long total);
+    }
+
+    /**
+     * Whether the operation was canceled.
+     */
+    private volatile boolean canceled;
+
+    /**
+     * Whether the monitor has a deadline.
+     */
+    private volatile boolean hasDeadline;
+
+    /**
+     * The deadline, in the time of {@link System#nanoTime()}.
+     */
+    private volatile long deadline;
+
+    /**
+     * The description of the current task.
+     */
+    private volatile String task;
+
+    /**
+     * The units of work of the current task.
+     */
+    private volatile long total;
+
+    /**
+     * The units of work done in the current task.
+     */
+    private final AtomicLong done = new AtomicLong();
+
+    /**
+     * The progress listener.
+     */
+    private volatile ProgressListener listener;
+
+    /**
+     * Instantiates a new progress monitor without deadline.
+     */
+    public ProgressMonitor() {
+    }
+
+    /**
+     * Instantiates a new progress monitor with a deadline.
+     *
+     * @param timeout the time after which the operation should stop, from now
+     * @param unit    the unit of the timeout
+     */
+    public ProgressMonitor(long timeout, TimeUnit unit) {
+        setTimeout(timeout, unit);
+    }
+
+    /**
+     * Sets the deadline.
+     *
+     * @param timeout the time after which the operation should stop, from now
+     * @param unit    the unit of the timeout
+     */
+    public void setTimeout(long timeout, TimeUnit unit) {
+        deadline = System.nanoTime() + unit.toNanos(timeout);
+        hasDeadline = true;
+    }
+
+    /**
+     * Sets the progress listener.
+     *
+     * @param listener the listener, or null for none
+     */
+    public void setProgressListener(ProgressListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Asks the operation to stop as soon as possible.
+     */
+    public void cancel() {
+        canceled = true;
+    }
+
+    /**
+     * Checks if the operation was canceled.
+     *
+     * @return true, if {@link #cancel()} was called
+     */
+    public boolean isCanceled() {
+        return canceled;
+    }
+
+    /**
+     * Checks if the deadline has passed.
+     *
+     * @return true, if there is a deadline and it has passed
+     */
+    public boolean isDeadlineExceeded() {
+        return hasDeadline && System.nanoTime() - deadline >= 0;
+    }
+
+    /**
+     * Checks if the operation should stop.
+     *
+     * @return true, if the operation was canceled or its deadline has passed
+     */
+    public boolean isStopped() {
+        return canceled || isDeadlineExceeded();
+    }
+
+    /**
+     * Starts a new task.
+     *
+     * @param task  the description of the task
+     * @param total the units of work of the task
+     */
+    public void begin(String task, long total) {
+        this.task = task;
+        this.total = total;
+        done.set(0);
+        report(0);
+    }
+
+    /**
+     * Records work done in the current task. It can be called from several
+     * threads at once.
+     *
+     * @param units the units of work done since the last call
+     */
+    public void worked(long units) {
+        report(done.addAndGet(units));
+    }
+
+    /**
+     * Records how much of the current task is done, for tasks whose progress
+     * is not a sum of units, such as the number of failed attempts of a
+     * search.
+     *
+     * @param units the units of work done in the task
+     */
+    public void setDone(long units) {
+        done.set(units);
+        report(units);
+    }
+
+    /**
+     * Gets the description of the current task.
+     *
+     * @return the task, or null if no task was started
+     */
+    public String getTask() {
+        return task;
+    }
+
+    /**
+     * Gets the units of work done in the current task.
+     *
+     * @return the units of work done
+     */
+    public long getDone() {
+        return done.get();
+    }
+
+    /**
+     * Gets the units of work of the current task.
+     *
+     * @return the units of work
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Calls the progress listener, if any.
+     *
+     * @param units the units of work done
+     */
+    private void report(long units) {
+        ProgressListener current = listener;
+        if (current != null) {
+            current.progressed(task, units, total);
+        }
+    }
+}
@@ -45,6 +45,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.IntConsumer;
 
 /**
  * Implementation of {@link DesignStructureMatrix} for values of the algebraic
@@ -54,6 +55,22 @@ import java.util.Map;
  * dependencies between the elements . A value in a cell at row i and column j
  * means that the element at position i depends on the element at position j and
  * the cell value indicates a measure of dependency.
+ * <br>
+ * <br>
+ * {@link #clone()} returns a copy-on-write snapshot that shares the rows and
+ * the mappings with this DSM, and {@link #transpose()} a DSM with new rows
+ * that shares the mappings. The first write to either DSM copies the array of
+ * rows, and after that only the rows that are actually written to. The
+ * mappings are copied the first time either DSM modifies them or hands them
+ * out. <br>
+ * <br>
+ * {@link #getMap()} and the mapping getters return the live rows and mappings
+ * of this DSM, not copies, so modifying them modifies this DSM. Since they can
+ * then be modified at any time without this DSM knowing, the rows or the
+ * mappings that have been handed out are never shared: every later clone gets
+ * its own copy of them, which takes O(N^2) for the rows and O(N) for the
+ * mappings. A clone is thus never changed through a reference obtained from
+ * this DSM.
  *
  * @author Roberto Milev
  */
@@ -75,19 +92,42 @@ public class RealNumberDSM implements DesignStructureMatrix<Real> {
     protected Map<String, Integer> clusterStartPositionMappings = new HashMap<String, Integer>();
 
     /**
-     * The name position mappings.
+     * The names and positions of the elements.
+     */
+    protected ElementDictionary elements = new ElementDictionary();
+
+    /**
+     * The map.
      */
-    protected Map<String, Integer> namePositionMappings = new HashMap<String, Integer>();
+    protected Real[][] map;
 
     /**
-     * The position name mappings.
+     * Whether the array of rows is shared with a clone.
      */
-    protected Map<Integer, String> positionNameMappings = new HashMap<Integer, String>();
+    protected boolean sharedRows;
 
     /**
-     * The map.
+     * The rows that have been copied since the array of rows was last shared,
+     * or null if every row is owned.
      */
-    protected Real[][] map;
+    protected boolean[] ownedRows;
+
+    /**
+     * Whether the mappings are shared with a clone.
+     */
+    protected boolean sharedMappings;
+
+    /**
+     * Whether the rows have been handed out by {@link #getMap()}, and may thus
+     * be written to without this DSM knowing.
+     */
+    protected boolean exposedRows;
+
+    /**
+     * Whether the mappings have been handed out by a getter, and may thus be
+     * modified without this DSM knowing.
+     */
+    protected boolean exposedMappings;
 
     /**
      * Default constructor.
@@ -112,8 +152,27 @@ public class RealNumberDSM implements DesignStructureMatrix<Real> {
             Real[][] map) {
         this.clusterEndPositionMappings = _cluster_end_position_mappings;
         this.clusterStartPositionMappings = _cluster_start_position_mappings;
-        this.namePositionMappings = _name_position_mappings;
-        this.positionNameMappings = _position_name_mappings;
+        this.elements = new ElementDictionary(_position_name_mappings, _name_position_mappings);
+        this.map = map;
+    }
+
+    /**
+     * Instantiates a new real number dsm over an element dictionary, which is not
+     * copied.
+     *
+     * @param _cluster_end_position_mappings   the _cluster_end_position_mappings
+     * @param _cluster_start_position_mappings the _cluster_start_position_mappings
+     * @param elements                         the names and positions of the elements
+     * @param map                              the map
+     */
+    public RealNumberDSM(
+            Map<String, Integer> _cluster_end_position_mappings,
+            Map<String, Integer> _cluster_start_position_mappings,
+            ElementDictionary elements,
+            Real[][] map) {
+        this.clusterEndPositionMappings = _cluster_end_position_mappings;
+        this.clusterStartPositionMappings = _cluster_start_position_mappings;
+        this.elements = elements;
         this.map = map;
     }
 
@@ -121,6 +180,7 @@ public class RealNumberDSM implements DesignStructureMatrix<Real> {
      * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getClusterEndPositionMappings()
      */
     public Map<String, Integer> getClusterEndPositionMappings() {
+        exposeMappings();
         return clusterEndPositionMappings;
     }
 
@@ -128,6 +188,7 @@ public class RealNumberDSM implements DesignStructureMatrix<Real> {
      * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getClusterStartPositionMappings()
      */
     public Map<String, Integer> getClusterStartPositionMappings() {
+        exposeMappings();
         return clusterStartPositionMappings;
     }
 
@@ -135,23 +196,184 @@ public class RealNumberDSM implements DesignStructureMatrix<Real> {
      * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getNamePositionMappings()
      */
     public Map<String, Integer> getNamePositionMappings() {
-        return namePositionMappings;
+        exposeMappings();
+        return elements.getNamePositionMappings();
     }
 
     /* (non-Javadoc)
      * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getPositionNameMappings()
      */
     public Map<Integer, String> getPositionNameMappings() {
-        return positionNameMappings;
+        exposeMappings();
+        return elements.getPositionNameMappings();
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getName(int)
+     */
+    public String getName(int position) {
+        return elements.getName(position);
     }
 
     /* (non-Javadoc)
-     * @see edu.carleton.tim.dsm.DesignStructureMatrix#getMap()
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getPosition(java.lang.String)
+     */
+    public int getPosition(String name) {
+        return elements.getPosition(name);
+    }
+
+    /**
+     * Gets the map, after copying any rows that are still shared with a clone.
+     *
+     * @return the live rows of this DSM, which are not a copy
      */
     public Real[][] getMap() {
+        ownRows();
+        exposedRows = true;
         return map;
     }
 
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getSize()
+     */
+    public int getSize() {
+        return map.length;
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#get(int, int)
+     */
+    public Real get(int row, int column) {
+        return map[row][column];
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#set(int, int, java.lang.Object)
+     */
+    public void set(int row, int column, Real value) {
+        writableRow(row)[column] = value;
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#hasDependency(int, int)
+     */
+    public boolean hasDependency(int row, int column) {
+        return map[row][column].doubleValue() != 0;
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#forEachDependencyInRow(int, java.util.function.IntConsumer)
+     */
+    public void forEachDependencyInRow(int row, IntConsumer action) {
+        Real[] cells = map[row];
+        for (int column = 0; column < cells.length; column++) {
+            if (cells[column].doubleValue() != 0) {
+                action.accept(column);
+            }
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#forEachDependencyInColumn(int, java.util.function.IntConsumer)
+     */
+    public void forEachDependencyInColumn(int column, IntConsumer action) {
+        for (int row = 0; row < map.length; row++) {
+            if (map[row][column].doubleValue() != 0) {
+                action.accept(row);
+            }
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getRowDegree(int)
+     */
+    public int getRowDegree(int row) {
+        Real[] cells = map[row];
+        int degree = 0;
+        for (int column = 0; column < cells.length; column++) {
+            if (cells[column].doubleValue() != 0) {
+                degree++;
+            }
+        }
+        return degree;
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getColumnDegree(int)
+     */
+    public int getColumnDegree(int column) {
+        int degree = 0;
+        for (int row = 0; row < map.length; row++) {
+            if (map[row][column].doubleValue() != 0) {
+                degree++;
+            }
+        }
+        return degree;
+    }
+
+    /**
+     * Copies the array of rows if it is shared with a clone. The rows
+     * themselves stay shared until they are written to.
+     */
+    private void ownRowArray() {
+        if (sharedRows) {
+            map = map.clone();
+            ownedRows = new boolean[map.length];
+            sharedRows = false;
+        }
+    }
+
+    /**
+     * Gets a row for writing, copying it first if it is shared with a clone.
+     *
+     * @param row the row
+     * @return the row
+     */
+    private Real[] writableRow(int row) {
+        ownRowArray();
+        if (ownedRows != null && !ownedRows[row]) {
+            map[row] = map[row].clone();
+            ownedRows[row] = true;
+        }
+        return map[row];
+    }
+
+    /**
+     * Copies every row that is still shared with a clone.
+     */
+    private void ownRows() {
+        ownRowArray();
+        if (ownedRows != null) {
+            for (int i = 0; i < map.length; i++) {
+                if (!ownedRows[i]) {
+                    map[i] = map[i].clone();
+                }
+            }
+            ownedRows = null;
+        }
+    }
+
+    /**
+     * Copies the mappings if they are shared with a clone, before they are
+     * handed out.
+     */
+    private void exposeMappings() {
+        ownMappings();
+        exposedMappings = true;
+    }
+
+    /**
+     * Copies the mappings if they are shared with a clone.
+     */
+    private void ownMappings() {
+        if (sharedMappings) {
+            clusterEndPositionMappings = new HashMap<String, Integer>(clusterEndPositionMappings);
+            clusterStartPositionMappings = new HashMap<String, Integer>(clusterStartPositionMappings);
+            elements = elements.clone();
+            sharedMappings = false;
+        }
+    }
+
 
     /* (non-Javadoc)
      * @see edu.carleton.tim.dsm.DesignStructureMatrix#prettyPrint()
@@ -193,55 +415,115 @@ public class RealNumberDSM implements DesignStructureMatrix<Real> {
      * @see edu.carleton.tim.dsm.DesignStructureMatrix#swap(int, int)
      */
     public void swap(int from, int to) {
-        Real temp;
-        for (int i = 0; i < map.length; i++) {
-            temp = map[from][i];
-            map[from][i] = map[to][i];
-            map[to][i] = temp;
+        ownRowArray();
+        Real[] tempRow = map[from];
+        map[from] = map[to];
+        map[to] = tempRow;
+        if (ownedRows != null) {
+            boolean tempOwned = ownedRows[from];
+            ownedRows[from] = ownedRows[to];
+            ownedRows[to] = tempOwned;
         }
+        Real temp;
         for (int i = 0; i < map.length; i++) {
-            temp = map[i][from];
-            map[i][from] = map[i][to];
-            map[i][to] = temp;
+            if (map[i][from] != map[i][to]) {
+                Real[] row = writableRow(i);
+                temp = row[from];
+                row[from] = row[to];
+                row[to] = temp;
+            }
         }
 
-        String fromName = positionNameMappings.get(from);
-        String toName = positionNameMappings.get(to);
-
-        positionNameMappings.put(from, toName);
-        positionNameMappings.put(to, fromName);
-        namePositionMappings.put(fromName, to);
-        namePositionMappings.put(toName, from);
+        ownMappings();
+        elements.swap(from, to);
     }
 
     /* (non-Javadoc)
-     * @see java.lang.Object#clone()
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#applyPermutation(int[])
      */
-    public DesignStructureMatrix<Real> clone() {
-        Map<String, Integer> _cluster_end_position_mappings = new HashMap<String, Integer>();
-        Map<String, Integer> _cluster_start_position_mappings = new HashMap<String, Integer>();
-        Map<String, Integer> _name_position_mappings = new HashMap<String, Integer>();
-        Map<Integer, String> _position_name_mappings = new HashMap<Integer, String>();
-        Real[][] map = new Real[this.map.length][this.map.length];
-
-        for (String key : this.clusterEndPositionMappings.keySet()) {
-            _cluster_end_position_mappings.put(new String(key), new Integer(this.clusterEndPositionMappings.get(key)));
-        }
-        for (String key : this.clusterStartPositionMappings.keySet()) {
-            _cluster_start_position_mappings.put(new String(key), new Integer(this.clusterStartPositionMappings.get(key)));
-        }
-        for (String key : this.namePositionMappings.keySet()) {
-            _name_position_mappings.put(new String(key), new Integer(this.namePositionMappings.get(key)));
-        }
-        for (Integer key : this.positionNameMappings.keySet()) {
-            _position_name_mappings.put(new Integer(key), new String(this.positionNameMappings.get(key)));
+    public void applyPermutation(int[] order) {
+        ownMappings();
+        Real[][] permuted = new Real[map.length][map.length];
+        for (int i = 0; i < map.length; i++) {
+            for (int j = 0; j < map.length; j++) {
+                permuted[i][j] = map[order[i]][order[j]];
+            }
         }
+        elements.applyPermutation(order);
+        map = permuted;
+        sharedRows = false;
+        ownedRows = null;
+        exposedRows = false;
+    }
+
+    /**
+     * Clones the DSM in O(1). The clone shares the rows and the mappings with
+     * this DSM until either of them is modified, except those that have been
+     * handed out by a getter, which are copied.
+     *
+     * @return the design structure matrix< real>
+     */
+    public DesignStructureMatrix<Real> clone() {
+        RealNumberDSM clone = new RealNumberDSM(clusterEndPositionMappings, clusterStartPositionMappings, elements, map);
+        share(clone);
+        return clone;
+    }
+
+    /**
+     * Transposes the matrix into new rows. The mappings are shared with this
+     * DSM until either of them is modified.
+     *
+     * @return a transposed design structure matrix; flipped along the diagonal
+     */
+    public DesignStructureMatrix<Real> transpose() {
+        Real[][] transposed = new Real[map.length][map.length];
         for (int i = 0; i < map.length; i++) {
             for (int j = 0; j < map.length; j++) {
-                map[i][j] = this.map[i][j];
+                transposed[j][i] = map[i][j];
+            }
+        }
+        RealNumberDSM clone = new RealNumberDSM(clusterEndPositionMappings, clusterStartPositionMappings, elements, transposed);
+        shareMappings(clone);
+        return clone;
+    }
+
+    /**
+     * Marks the rows and the mappings as shared between this DSM and a clone
+     * built over them, or gives the clone its own copy of those that have been
+     * handed out.
+     *
+     * @param clone the clone
+     */
+    private void share(RealNumberDSM clone) {
+        if (exposedRows) {
+            Real[][] rows = new Real[map.length][];
+            for (int i = 0; i < map.length; i++) {
+                rows[i] = map[i].clone();
             }
+            clone.map = rows;
+        } else {
+            sharedRows = true;
+            ownedRows = null;
+            clone.sharedRows = true;
+        }
+        shareMappings(clone);
+    }
+
+    /**
+     * Marks the mappings as shared between this DSM and a DSM built over them,
+     * or gives the other DSM its own copy if they have been handed out.
+     *
+     * @param other the other DSM
+     */
+    private void shareMappings(RealNumberDSM other) {
+        if (exposedMappings) {
+            other.clusterEndPositionMappings = new HashMap<String, Integer>(clusterEndPositionMappings);
+            other.clusterStartPositionMappings = new HashMap<String, Integer>(clusterStartPositionMappings);
+            other.elements = elements.clone();
+        } else {
+            sharedMappings = true;
+            other.sharedMappings = true;
         }
-        return new RealNumberDSM(_cluster_end_position_mappings, _cluster_start_position_mappings, _name_position_mappings, _position_name_mappings, map);
     }
 
     /* (non-Javadoc)
@@ -264,9 +546,13 @@ public class RealNumberDSM implements DesignStructureMatrix<Real> {
         reader.close();
         clusterEndPositionMappings = dsm.clusterEndPositionMappings;
         clusterStartPositionMappings = dsm.clusterStartPositionMappings;
-        namePositionMappings = dsm.namePositionMappings;
-        positionNameMappings = dsm.positionNameMappings;
+        elements = dsm.elements;
         map = dsm.map;
+        sharedRows = false;
+        ownedRows = null;
+        sharedMappings = false;
+        exposedRows = false;
+        exposedMappings = false;
         logger.info("Loaded DSM from XML");
     }
 
@@ -295,8 +581,9 @@ public class RealNumberDSM implements DesignStructureMatrix<Real> {
                 throws XMLStreamException {
             dsm.clusterEndPositionMappings = xml.get("clusterEndPositionMappings");
             dsm.clusterStartPositionMappings = xml.get("clusterStartPositionMappings");
-            dsm.namePositionMappings = xml.get("namePositionMappings");
-            dsm.positionNameMappings = xml.get("positionNameMappings");
+            Map<String, Integer> namePositionMappings = xml.get("namePositionMappings");
+            Map<Integer, String> positionNameMappings = xml.get("positionNameMappings");
+            dsm.elements = new ElementDictionary(positionNameMappings, namePositionMappings);
             dsm.map = xml.get("map");
         }
 
@@ -305,8 +592,8 @@ public class RealNumberDSM implements DesignStructureMatrix<Real> {
                 throws XMLStreamException {
             xml.add(dsm.clusterEndPositionMappings, "clusterEndPositionMappings");
             xml.add(dsm.clusterStartPositionMappings, "clusterStartPositionMappings");
-            xml.add(dsm.namePositionMappings, "namePositionMappings");
-            xml.add(dsm.positionNameMappings, "positionNameMappings");
+            xml.add(new HashMap<String, Integer>(dsm.elements.getNamePositionMappings()), "namePositionMappings");
+            xml.add(new HashMap<Integer, String>(dsm.elements.getPositionNameMappings()), "positionNameMappings");
             xml.add(dsm.map, "map");
         }
     };
@@ -0,0 +1,517 @@
+/*
+Copyright (c) 2008, Roberto Milev
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or 
+without modification, are permitted provided that the following 
+conditions are met:
+
+    * Redistributions of source code must retain the above 
+      copyright notice, this list of conditions and the following 
+      disclaimer.
+    * Redistributions in binary form must reproduce the above 
+      copyright notice, this list of conditions and the following 
+      disclaimer in the documentation and/or other materials 
+      provided with the distribution.
+    * Neither the name of the Carleton University nor the names 
+      of its contributors may be used to endorse or promote 
+      products derived from this software without specific prior 
+      written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR 
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF 
+ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+*/
+package edu.carleton.tim.jdsm;
+
+import javolution.xml.stream.XMLStreamException;
+import org.jscience.mathematics.structure.Field;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+
+/**
+ * A {@link DesignStructureMatrix} that reorders another DSM without moving its
+ * cells. <br>
+ * <br>
+ * The wrapped DSM keeps the cells and names in their original order, and this
+ * class keeps a permutation between the positions it exposes and the positions
+ * of the wrapped DSM. {@link #swap(int, int)} is therefore O(1) and
+ * {@link #shift(int, int)} is O(|from - to|), instead of moving whole rows and
+ * columns. Every cell access costs two more array lookups. <br>
+ * <br>
+ * {@link #applyPermutation(int[])} and {@link #getMap()} write the current
+ * ordering through to the wrapped DSM in a single pass, for when a physical
+ * layout is needed. The cluster mappings are shared with the wrapped DSM, and
+ * the name mappings are read-only views that follow the permutation.
+ *
+ * @param <F> the algebraic field of the cell values
+ */
+public class ReorderableDSM<F extends Field<F>> implements DesignStructureMatrix<F> {
+
+    /**
+     * The wrapped DSM, in its original order.
+     */
+    protected DesignStructureMatrix<F> matrix;
+
+    /**
+     * The position in the wrapped DSM of the element at each position.
+     */
+    protected int[] elementAt;
+
+    /**
+     * The position of each element of the wrapped DSM.
+     */
+    protected int[] positionOf;
+
+    /**
+     * The name position mappings.
+     */
+    private final Map<String, Integer> namePositionMappings = new NamePositionView();
+
+    /**
+     * The position name mappings.
+     */
+    private final Map<Integer, String> positionNameMappings = new PositionNameView();
+
+    /**
+     * Instantiates a new reorderable dsm over the given DSM, in its current
+     * order. The wrapped DSM should not be modified directly afterwards.
+     *
+     * @param matrix the DSM to reorder
+     */
+    public ReorderableDSM(DesignStructureMatrix<F> matrix) {
+        this(matrix, identity(matrix.getSize()));
+    }
+
+    /**
+     * Instantiates a new reorderable dsm.
+     *
+     * @param matrix    the DSM to reorder
+     * @param elementAt the position in the wrapped DSM of the element at each
+     *                  position
+     */
+    private ReorderableDSM(DesignStructureMatrix<F> matrix, int[] elementAt) {
+        this.matrix = matrix;
+        this.elementAt = elementAt;
+        this.positionOf = new int[elementAt.length];
+        for (int i = 0; i < elementAt.length; i++) {
+            positionOf[elementAt[i]] = i;
+        }
+    }
+
+    /**
+     * Identity permutation.
+     *
+     * @param size the size
+     * @return the identity permutation of the given size
+     */
+    private static int[] identity(int size) {
+        int[] identity = new int[size];
+        for (int i = 0; i < size; i++) {
+            identity[i] = i;
+        }
+        return identity;
+    }
+
+    /**
+     * Gets the position in the wrapped DSM of the element at a position.
+     *
+     * @param position the position
+     * @return the position in the wrapped DSM
+     */
+    public int getElementAt(int position) {
+        return elementAt[position];
+    }
+
+    /**
+     * Gets the position of an element of the wrapped DSM.
+     *
+     * @param element the position in the wrapped DSM
+     * @return the position
+     */
+    public int getPositionOf(int element) {
+        return positionOf[element];
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getClusterEndPositionMappings()
+     */
+    public Map<String, Integer> getClusterEndPositionMappings() {
+        return matrix.getClusterEndPositionMappings();
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getClusterStartPositionMappings()
+     */
+    public Map<String, Integer> getClusterStartPositionMappings() {
+        return matrix.getClusterStartPositionMappings();
+    }
+
+    /**
+     * Gets a read-only view of the name position mappings.
+     *
+     * @return the name position mappings
+     */
+    public Map<String, Integer> getNamePositionMappings() {
+        return namePositionMappings;
+    }
+
+    /**
+     * Gets a read-only view of the position name mappings.
+     *
+     * @return the position name mappings
+     */
+    public Map<Integer, String> getPositionNameMappings() {
+        return positionNameMappings;
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getName(int)
+     */
+    public String getName(int position) {
+        return matrix.getName(elementAt[position]);
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getPosition(java.lang.String)
+     */
+    public int getPosition(String name) {
+        int element = matrix.getPosition(name);
+        return element < 0 ? -1 : positionOf[element];
+    }
+
+    /**
+     * Gets the map of the wrapped DSM, after writing the current ordering
+     * through to it.
+     *
+     * @return the map
+     */
+    public F[][] getMap() {
+        materialize();
+        return matrix.getMap();
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getSize()
+     */
+    public int getSize() {
+        return elementAt.length;
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#get(int, int)
+     */
+    public F get(int row, int column) {
+        return matrix.get(elementAt[row], elementAt[column]);
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#set(int, int, java.lang.Object)
+     */
+    public void set(int row, int column, F value) {
+        matrix.set(elementAt[row], elementAt[column], value);
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#hasDependency(int, int)
+     */
+    public boolean hasDependency(int row, int column) {
+        return matrix.hasDependency(elementAt[row], elementAt[column]);
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#forEachDependencyInRow(int, java.util.function.IntConsumer)
+     */
+    public void forEachDependencyInRow(int row, IntConsumer action) {
+        matrix.forEachDependencyInRow(elementAt[row], column -> action.accept(positionOf[column]));
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#forEachDependencyInColumn(int, java.util.function.IntConsumer)
+     */
+    public void forEachDependencyInColumn(int column, IntConsumer action) {
+        matrix.forEachDependencyInColumn(elementAt[column], row -> action.accept(positionOf[row]));
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getRowDegree(int)
+     */
+    public int getRowDegree(int row) {
+        return matrix.getRowDegree(elementAt[row]);
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getColumnDegree(int)
+     */
+    public int getColumnDegree(int column) {
+        return matrix.getColumnDegree(elementAt[column]);
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.dsm.DesignStructureMatrix#prettyPrint()
+     */
+    public void prettyPrint() {
+        for (int i = 0; i < elementAt.length; i++) {
+            for (int j = 0; j < elementAt.length; j++) {
+                System.out.print("\t" + get(i, j));
+            }
+            System.out.println("");
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.dsm.DesignStructureMatrix#resetClusters()
+     */
+    public void resetClusters() {
+        matrix.resetClusters();
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.dsm.DesignStructureMatrix#shift(int, int)
+     */
+    public void shift(int from, int to) {
+        int moved = elementAt[from];
+        if (from < to) {
+            for (int i = from; i < to; i++) {
+                elementAt[i] = elementAt[i + 1];
+                positionOf[elementAt[i]] = i;
+            }
+        } else {
+            for (int i = from; i > to; i--) {
+                elementAt[i] = elementAt[i - 1];
+                positionOf[elementAt[i]] = i;
+            }
+        }
+        elementAt[to] = moved;
+        positionOf[moved] = to;
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.dsm.DesignStructureMatrix#swap(int, int)
+     */
+    public void swap(int from, int to) {
+        int fromElement = elementAt[from];
+        int toElement = elementAt[to];
+        elementAt[from] = toElement;
+        elementAt[to] = fromElement;
+        positionOf[toElement] = from;
+        positionOf[fromElement] = to;
+    }
+
+    /**
+     * Reorders the DSM and writes the resulting ordering through to the wrapped
+     * DSM in a single pass. Afterwards the wrapped DSM is in the same order as
+     * this one.
+     *
+     * @param order a permutation of the positions 0..N-1
+     */
+    public void applyPermutation(int[] order) {
+        int[] permuted = new int[elementAt.length];
+        for (int i = 0; i < elementAt.length; i++) {
+            permuted[i] = elementAt[order[i]];
+        }
+        matrix.applyPermutation(permuted);
+        elementAt = identity(permuted.length);
+        positionOf = identity(permuted.length);
+    }
+
+    /**
+     * Writes the current ordering through to the wrapped DSM, unless it is
+     * already in the same order.
+     */
+    public void materialize() {
+        for (int i = 0; i < elementAt.length; i++) {
+            if (elementAt[i] != i) {
+                matrix.applyPermutation(elementAt);
+                elementAt = identity(elementAt.length);
+                positionOf = identity(elementAt.length);
+                return;
+            }
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#clone()
+     */
+    public DesignStructureMatrix<F> clone() {
+        return new ReorderableDSM<F>(matrix.clone(), elementAt.clone());
+    }
+
+    /**
+     * Transposes the wrapped DSM and keeps the same ordering.
+     *
+     * @return a transposed design structure matrix; flipped along the diagonal
+     */
+    public DesignStructureMatrix<F> transpose() {
+        return new ReorderableDSM<F>(matrix.transpose(), elementAt.clone());
+    }
+
+    /**
+     * Serializes the wrapped DSM to XML format, after writing the current
+     * ordering through to it.
+     *
+     * @param outputStream stream to write XML to
+     * @throws XMLStreamException the XML stream exception
+     */
+    public void saveToXml(OutputStream outputStream) throws XMLStreamException {
+        materialize();
+        matrix.saveToXml(outputStream);
+    }
+
+    /**
+     * Deserializes the wrapped DSM from XML format and resets the ordering.
+     *
+     * @param outputStream stream to read XML from
+     * @throws XMLStreamException the XML stream exception
+     */
+    public void loadFromXml(InputStream outputStream) throws XMLStreamException {
+        matrix.loadFromXml(outputStream);
+        elementAt = identity(matrix.getSize());
+        positionOf = identity(matrix.getSize());
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        StringBuilder result = new StringBuilder("\n");
+        for (int i = 0; i < elementAt.length; i++) {
+            for (int j = 0; j < elementAt.length; j++) {
+                result.append(get(i, j)).append('\t');
+            }
+            result.append('\n');
+        }
+        return result.toString();
+    }
+
+    /**
+     * Read-only view of the position name mappings of the wrapped DSM, through
+     * the permutation.
+     */
+    private class PositionNameView extends AbstractMap<Integer, String> {
+
+        @Override
+        public String get(Object key) {
+            if (!(key instanceof Integer)) {
+                return null;
+            }
+            int position = (Integer) key;
+            if (position < 0 || position >= elementAt.length) {
+                return null;
+            }
+            return matrix.getName(elementAt[position]);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public int size() {
+            return elementAt.length;
+        }
+
+        @Override
+        public Set<Entry<Integer, String>> entrySet() {
+            return new AbstractSet<Entry<Integer, String>>() {
+
+                @Override
+                public Iterator<Entry<Integer, String>> iterator() {
+                    return new Iterator<Entry<Integer, String>>() {
+
+                        private int position = 0;
+
+                        public boolean hasNext() {
+                            return position < elementAt.length;
+                        }
+
+                        public Entry<Integer, String> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            Integer key = position++;
+                            return new SimpleImmutableEntry<Integer, String>(key, get(key));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return elementAt.length;
+                }
+            };
+        }
+    }
+
+    /**
+     * Read-only view of the name position mappings of the wrapped DSM, through
+     * the permutation.
+     */
+    private class NamePositionView extends AbstractMap<String, Integer> {
+
+        @Override
+        public Integer get(Object key) {
+            int element = key instanceof String ? matrix.getPosition((String) key) : -1;
+            return element < 0 ? null : positionOf[element];
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return matrix.getNamePositionMappings().containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return matrix.getNamePositionMappings().size();
+        }
+
+        @Override
+        public Set<Entry<String, Integer>> entrySet() {
+            return new AbstractSet<Entry<String, Integer>>() {
+
+                @Override
+                public Iterator<Entry<String, Integer>> iterator() {
+                    final Iterator<Entry<String, Integer>> elements =
+                            matrix.getNamePositionMappings().entrySet().iterator();
+                    return new Iterator<Entry<String, Integer>>() {
+
+                        public boolean hasNext() {
+                            return elements.hasNext();
+                        }
+
+                        public Entry<String, Integer> next() {
+                            Entry<String, Integer> element = elements.next();
+                            return new SimpleImmutableEntry<String, Integer>(
+                                    element.getKey(), positionOf[element.getValue()]);
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return matrix.getNamePositionMappings().size();
+                }
+            };
+        }
+    }
+}
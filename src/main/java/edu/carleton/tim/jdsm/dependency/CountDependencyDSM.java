@@ -0,0 +1,611 @@
+/*
+Copyright (c) 2008, Roberto Milev
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or 
+without modification, are permitted provided that the following 
+conditions are met:
+
+    * Redistributions of source code must retain the above 
+      copyright notice, this list of conditions and the following 
+      disclaimer.
+    * Redistributions in binary form must reproduce the above 
+      copyright notice, this list of conditions and the following 
+      disclaimer in the documentation and/or other materials 
+      provided with the distribution.
+    * Neither the name of the Carleton University nor the names 
+      of its contributors may be used to endorse or promote 
+      products derived from this software without specific prior 
+      written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR 
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF 
+ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+*/
+package edu.carleton.tim.jdsm.dependency;
+
+import edu.carleton.tim.jdsm.DesignStructureMatrix;
+import edu.carleton.tim.jdsm.ElementDictionary;
+import javolution.xml.XMLFormat;
+import javolution.xml.XMLObjectReader;
+import javolution.xml.XMLObjectWriter;
+import javolution.xml.stream.XMLStreamException;
+import org.apache.log4j.Logger;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * Implementation of {@link DesignStructureMatrix} that counts the references
+ * from each element to each other element. <br>
+ * <br>
+ * The counts are kept in a single <code>int[]</code> in row-major order, so
+ * the count of the cell at row i and column j is at index
+ * <code>i * N + j</code>. Seen as a DSM of {@link Dependency} values, a cell
+ * holds {@link Dependency#YES} if its count is not zero, so the analyses can
+ * be run on the counts directly; {@link #toDependencyDSM(int)} and
+ * {@link #toPackedDependencyDSM(int)} keep only the cells with at least a given
+ * number of references. {@link #getMap()} returns a detached copy. The flat
+ * array limits the DSM to 46340 elements.
+ */
+public class CountDependencyDSM implements DesignStructureMatrix<Dependency> {
+
+    /**
+     * The logger.
+     */
+    private static Logger logger = Logger.getLogger(CountDependencyDSM.class);
+
+    /**
+     * The largest number of elements the flat array can hold.
+     */
+    public static final int MAXIMUM_SIZE = 46340;
+
+    /**
+     * The cluster end position mappings.
+     */
+    protected Map<String, Integer> clusterEndPositionMappings = new HashMap<String, Integer>();
+
+    /**
+     * The cluster start position mappings.
+     */
+    protected Map<String, Integer> clusterStartPositionMappings = new HashMap<String, Integer>();
+
+    /**
+     * The names and positions of the elements.
+     */
+    protected ElementDictionary elements = new ElementDictionary();
+
+    /**
+     * The number of elements.
+     */
+    protected int size;
+
+    /**
+     * The counts, in row-major order.
+     */
+    protected int[] counts = new int[0];
+
+    /**
+     * Default constructor.
+     */
+    public CountDependencyDSM() {
+    }
+
+    /**
+     * Instantiates a new count dependency dsm with all counts set to zero.
+     *
+     * @param _cluster_end_position_mappings   the _cluster_end_position_mappings
+     * @param _cluster_start_position_mappings the _cluster_start_position_mappings
+     * @param _name_position_mappings          the _name_position_mappings
+     * @param _position_name_mappings          the _position_name_mappings
+     * @param size                             the number of elements
+     */
+    public CountDependencyDSM(
+            Map<String, Integer> _cluster_end_position_mappings,
+            Map<String, Integer> _cluster_start_position_mappings,
+            Map<String, Integer> _name_position_mappings,
+            Map<Integer, String> _position_name_mappings,
+            int size) {
+        if (size > MAXIMUM_SIZE) {
+            throw new IllegalArgumentException("A CountDependencyDSM holds at most " + MAXIMUM_SIZE + " elements: " + size);
+        }
+        this.clusterEndPositionMappings = _cluster_end_position_mappings;
+        this.clusterStartPositionMappings = _cluster_start_position_mappings;
+        this.elements = new ElementDictionary(_position_name_mappings, _name_position_mappings);
+        this.size = size;
+        this.counts = new int[size * size];
+    }
+
+    /**
+     * Instantiates a new count dependency dsm with the same elements and
+     * clusters as the given DSM, and a count of one for each of its
+     * dependencies.
+     *
+     * @param dsm the DSM to copy
+     */
+    public CountDependencyDSM(DesignStructureMatrix<Dependency> dsm) {
+        this(new HashMap<String, Integer>(dsm.getClusterEndPositionMappings()),
+                new HashMap<String, Integer>(dsm.getClusterStartPositionMappings()),
+                new HashMap<String, Integer>(dsm.getNamePositionMappings()),
+                new HashMap<Integer, String>(dsm.getPositionNameMappings()),
+                dsm.getSize());
+        for (int i = 0; i < size; i++) {
+            final int row = i * size;
+            dsm.forEachDependencyInRow(i, j -> counts[row + j] = 1);
+        }
+    }
+
+    /**
+     * Converts this DSM to a {@link DependencyDSM}.
+     *
+     * @param threshold the smallest count of a dependency; counts of zero are
+     *                  never dependencies
+     * @return a dependency DSM with the same elements and clusters, and a
+     * dependency in each cell with a count of at least the threshold
+     */
+    public DependencyDSM toDependencyDSM(int threshold) {
+        int minimum = Math.max(threshold, 1);
+        Dependency[][] map = new Dependency[size][size];
+        for (int i = 0; i < size; i++) {
+            Dependency[] row = map[i];
+            int offset = i * size;
+            for (int j = 0; j < size; j++) {
+                row[j] = counts[offset + j] >= minimum ? Dependency.YES : Dependency.NO;
+            }
+        }
+        return new DependencyDSM(new HashMap<String, Integer>(clusterEndPositionMappings),
+                new HashMap<String, Integer>(clusterStartPositionMappings),
+                elements.clone(),
+                map);
+    }
+
+    /**
+     * Converts this DSM to a {@link PackedDependencyDSM}.
+     *
+     * @param threshold the smallest count of a dependency; counts of zero are
+     *                  never dependencies
+     * @return a packed dependency DSM with the same elements and clusters, and
+     * a dependency in each cell with a count of at least the threshold
+     */
+    public PackedDependencyDSM toPackedDependencyDSM(int threshold) {
+        PackedDependencyDSM packed = new PackedDependencyDSM(
+                new HashMap<String, Integer>(clusterEndPositionMappings),
+                new HashMap<String, Integer>(clusterStartPositionMappings),
+                elements.getNamePositionMappings(),
+                elements.getPositionNameMappings(),
+                size);
+        int minimum = Math.max(threshold, 1);
+        for (int i = 0; i < size; i++) {
+            long[] row = packed.rows[i];
+            int offset = i * size;
+            for (int j = 0; j < size; j++) {
+                if (counts[offset + j] >= minimum) {
+                    row[j >>> 6] |= 1L << j;
+                }
+            }
+        }
+        return packed;
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getClusterEndPositionMappings()
+     */
+    public Map<String, Integer> getClusterEndPositionMappings() {
+        return clusterEndPositionMappings;
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getClusterStartPositionMappings()
+     */
+    public Map<String, Integer> getClusterStartPositionMappings() {
+        return clusterStartPositionMappings;
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getNamePositionMappings()
+     */
+    public Map<String, Integer> getNamePositionMappings() {
+        return elements.getNamePositionMappings();
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getPositionNameMappings()
+     */
+    public Map<Integer, String> getPositionNameMappings() {
+        return elements.getPositionNameMappings();
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getName(int)
+     */
+    public String getName(int position) {
+        return elements.getName(position);
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getPosition(java.lang.String)
+     */
+    public int getPosition(String name) {
+        return elements.getPosition(name);
+    }
+
+    /**
+     * Gets a detached copy of the matrix. Changes to the returned array are not
+     * reflected in this DSM; use {@link #setCount(int, int, int)} instead.
+     *
+     * @return the map
+     */
+    public Dependency[][] getMap() {
+        Dependency[][] map = new Dependency[size][size];
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                map[i][j] = counts[i * size + j] != 0 ? Dependency.YES : Dependency.NO;
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Gets the counts in row-major order. The array is not copied.
+     *
+     * @return the counts
+     */
+    public int[] getCounts() {
+        return counts;
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getSize()
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Gets the count of a single cell.
+     *
+     * @param row    the row
+     * @param column the column
+     * @return the number of references from the element at the row to the
+     * element at the column
+     */
+    public int getCount(int row, int column) {
+        return counts[row * size + column];
+    }
+
+    /**
+     * Sets the count of a single cell.
+     *
+     * @param row    the row
+     * @param column the column
+     * @param count  the count
+     */
+    public void setCount(int row, int column, int count) {
+        counts[row * size + column] = count;
+    }
+
+    /**
+     * Adds to the count of a single cell.
+     *
+     * @param row    the row
+     * @param column the column
+     * @param count  the number of references to add
+     */
+    public void addCount(int row, int column, int count) {
+        counts[row * size + column] += count;
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#get(int, int)
+     */
+    public Dependency get(int row, int column) {
+        return counts[row * size + column] != 0 ? Dependency.YES : Dependency.NO;
+    }
+
+    /**
+     * Sets the value of a single cell. {@link Dependency#YES} sets the count to
+     * one unless the cell already has references, {@link Dependency#NO} sets
+     * it to zero.
+     *
+     * @param row    the row
+     * @param column the column
+     * @param value  the new value of the cell
+     */
+    public void set(int row, int column, Dependency value) {
+        int index = row * size + column;
+        if (!value.booleanValue()) {
+            counts[index] = 0;
+        } else if (counts[index] == 0) {
+            counts[index] = 1;
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#hasDependency(int, int)
+     */
+    public boolean hasDependency(int row, int column) {
+        return counts[row * size + column] != 0;
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#forEachDependencyInRow(int, java.util.function.IntConsumer)
+     */
+    public void forEachDependencyInRow(int row, IntConsumer action) {
+        int offset = row * size;
+        for (int column = 0; column < size; column++) {
+            if (counts[offset + column] != 0) {
+                action.accept(column);
+            }
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#forEachDependencyInColumn(int, java.util.function.IntConsumer)
+     */
+    public void forEachDependencyInColumn(int column, IntConsumer action) {
+        for (int row = 0, index = column; row < size; row++, index += size) {
+            if (counts[index] != 0) {
+                action.accept(row);
+            }
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getRowDegree(int)
+     */
+    public int getRowDegree(int row) {
+        int offset = row * size;
+        int degree = 0;
+        for (int column = 0; column < size; column++) {
+            if (counts[offset + column] != 0) {
+                degree++;
+            }
+        }
+        return degree;
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getColumnDegree(int)
+     */
+    public int getColumnDegree(int column) {
+        int degree = 0;
+        for (int row = 0, index = column; row < size; row++, index += size) {
+            if (counts[index] != 0) {
+                degree++;
+            }
+        }
+        return degree;
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.dsm.DesignStructureMatrix#prettyPrint()
+     */
+    public void prettyPrint() {
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                System.out.print("\t" + counts[i * size + j]);
+            }
+            System.out.println("");
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.dsm.DesignStructureMatrix#resetClusters()
+     */
+    public void resetClusters() {
+        this.clusterStartPositionMappings = new HashMap<String, Integer>();
+        this.clusterEndPositionMappings = new HashMap<String, Integer>();
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.dsm.DesignStructureMatrix#shift(int, int)
+     */
+    public void shift(int from, int to) {
+        if (from == to) {
+            return;
+        }
+        int[] movedRow = new int[size];
+        System.arraycopy(counts, from * size, movedRow, 0, size);
+        if (from < to) {
+            System.arraycopy(counts, (from + 1) * size, counts, from * size, (to - from) * size);
+            System.arraycopy(movedRow, 0, counts, to * size, size);
+            for (int i = 0; i < size; i++) {
+                int row = i * size;
+                int moved = counts[row + from];
+                System.arraycopy(counts, row + from + 1, counts, row + from, to - from);
+                counts[row + to] = moved;
+            }
+        } else {
+            System.arraycopy(counts, to * size, counts, (to + 1) * size, (from - to) * size);
+            System.arraycopy(movedRow, 0, counts, to * size, size);
+            for (int i = 0; i < size; i++) {
+                int row = i * size;
+                int moved = counts[row + from];
+                System.arraycopy(counts, row + to, counts, row + to + 1, from - to);
+                counts[row + to] = moved;
+            }
+        }
+        elements.shift(from, to);
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.dsm.DesignStructureMatrix#swap(int, int)
+     */
+    public void swap(int from, int to) {
+        int temp;
+        int fromRow = from * size;
+        int toRow = to * size;
+        for (int i = 0; i < size; i++) {
+            temp = counts[fromRow + i];
+            counts[fromRow + i] = counts[toRow + i];
+            counts[toRow + i] = temp;
+        }
+        for (int i = 0; i < size; i++) {
+            int row = i * size;
+            temp = counts[row + from];
+            counts[row + from] = counts[row + to];
+            counts[row + to] = temp;
+        }
+
+        elements.swap(from, to);
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#applyPermutation(int[])
+     */
+    public void applyPermutation(int[] order) {
+        int[] permuted = new int[counts.length];
+        for (int i = 0; i < size; i++) {
+            int row = order[i] * size;
+            for (int j = 0; j < size; j++) {
+                permuted[i * size + j] = counts[row + order[j]];
+            }
+        }
+        elements.applyPermutation(order);
+        counts = permuted;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#clone()
+     */
+    public DesignStructureMatrix<Dependency> clone() {
+        CountDependencyDSM clone = new CountDependencyDSM();
+        clone.clusterEndPositionMappings = new HashMap<String, Integer>(clusterEndPositionMappings);
+        clone.clusterStartPositionMappings = new HashMap<String, Integer>(clusterStartPositionMappings);
+        clone.elements = elements.clone();
+        clone.size = size;
+        clone.counts = counts.clone();
+        return clone;
+    }
+
+    /**
+     * Transposes the matrix in blocks of 64x64 cells.
+     *
+     * @return a transposed design structure matrix; flipped along the diagonal
+     */
+    public DesignStructureMatrix<Dependency> transpose() {
+        CountDependencyDSM transposed = (CountDependencyDSM) clone();
+        for (int blockRow = 0; blockRow < size; blockRow += 64) {
+            for (int blockColumn = 0; blockColumn < size; blockColumn += 64) {
+                int rowEnd = Math.min(blockRow + 64, size);
+                int columnEnd = Math.min(blockColumn + 64, size);
+                for (int i = blockRow; i < rowEnd; i++) {
+                    for (int j = blockColumn; j < columnEnd; j++) {
+                        transposed.counts[j * size + i] = counts[i * size + j];
+                    }
+                }
+            }
+        }
+        return transposed;
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#saveToXml(java.io.OutputStream)
+     */
+    public void saveToXml(OutputStream outputStream) throws XMLStreamException {
+        XMLObjectWriter writer = XMLObjectWriter.newInstance(outputStream);
+        writer.setIndentation("\t");
+        writer.write(this, this.getClass().getCanonicalName(), CountDependencyDSM.class);
+        writer.close();
+        logger.info("Saved DSM to XML");
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#loadFromXml(java.io.InputStream)
+     */
+    public void loadFromXml(InputStream outputStream) throws XMLStreamException {
+        XMLObjectReader reader = XMLObjectReader.newInstance(outputStream);
+        CountDependencyDSM dsm = reader.read(this.getClass().getCanonicalName(), CountDependencyDSM.class);
+        reader.close();
+        clusterEndPositionMappings = dsm.clusterEndPositionMappings;
+        clusterStartPositionMappings = dsm.clusterStartPositionMappings;
+        elements = dsm.elements;
+        size = dsm.size;
+        counts = dsm.counts;
+        logger.info("Loaded DSM from XML");
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        StringBuilder result = new StringBuilder("\n");
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                result.append(counts[i * size + j]).append('\t');
+            }
+            result.append('\n');
+        }
+        return result.toString();
+    }
+
+    /**
+     * The Constant XML. Each row is written as the comma separated list of the
+     * columns it depends on, each followed by a colon and its count.
+     */
+    protected static final XMLFormat<CountDependencyDSM> XML = new XMLFormat<CountDependencyDSM>(CountDependencyDSM.class) {
+
+        @Override
+        public void read(InputElement xml, CountDependencyDSM dsm)
+                throws XMLStreamException {
+            dsm.clusterEndPositionMappings = xml.get("clusterEndPositionMappings");
+            dsm.clusterStartPositionMappings = xml.get("clusterStartPositionMappings");
+            Map<String, Integer> namePositionMappings = xml.get("namePositionMappings");
+            Map<Integer, String> positionNameMappings = xml.get("positionNameMappings");
+            dsm.elements = new ElementDictionary(positionNameMappings, namePositionMappings);
+            Integer size = xml.get("size");
+            if (size > MAXIMUM_SIZE) {
+                throw new XMLStreamException("A CountDependencyDSM holds at most " + MAXIMUM_SIZE + " elements: " + size);
+            }
+            dsm.size = size;
+            dsm.counts = new int[size * size];
+            for (int i = 0; i < size; i++) {
+                String row = xml.get("row");
+                if (row.length() > 0) {
+                    for (String cell : row.split(",")) {
+                        int colon = cell.indexOf(':');
+                        int j = Integer.parseInt(cell.substring(0, colon));
+                        dsm.counts[i * size + j] = Integer.parseInt(cell.substring(colon + 1));
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void write(CountDependencyDSM dsm, OutputElement xml)
+                throws XMLStreamException {
+            xml.add(dsm.clusterEndPositionMappings, "clusterEndPositionMappings");
+            xml.add(dsm.clusterStartPositionMappings, "clusterStartPositionMappings");
+            xml.add(new HashMap<String, Integer>(dsm.elements.getNamePositionMappings()), "namePositionMappings");
+            xml.add(new HashMap<Integer, String>(dsm.elements.getPositionNameMappings()), "positionNameMappings");
+            xml.add(dsm.size, "size");
+            for (int i = 0; i < dsm.size; i++) {
+                StringBuilder cells = new StringBuilder();
+                for (int j = 0; j < dsm.size; j++) {
+                    int count = dsm.counts[i * dsm.size + j];
+                    if (count != 0) {
+                        if (cells.length() > 0) {
+                            cells.append(',');
+                        }
+                        cells.append(j).append(':').append(count);
+                    }
+                }
+                xml.add(cells.toString(), "row");
+            }
+        }
+    };
+
+}
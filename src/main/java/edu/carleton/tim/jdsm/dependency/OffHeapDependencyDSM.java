@@ -0,0 +1,912 @@
+/*
+Copyright (c) 2008, Roberto Milev
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or 
+without modification, are permitted provided that the following 
+conditions are met:
+
+    * Redistributions of source code must retain the above 
+      copyright notice, this list of conditions and the following 
+      disclaimer.
+    * Redistributions in binary form must reproduce the above 
+      copyright notice, this list of conditions and the following 
+      disclaimer in the documentation and/or other materials 
+      provided with the distribution.
+    * Neither the name of the Carleton University nor the names 
+      of its contributors may be used to endorse or promote 
+      products derived from this software without specific prior 
+      written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR 
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF 
+ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+*/
+package edu.carleton.tim.jdsm.dependency;
+
+import edu.carleton.tim.jdsm.DesignStructureMatrix;
+import edu.carleton.tim.jdsm.ElementDictionary;
+import javolution.xml.XMLFormat;
+import javolution.xml.XMLObjectReader;
+import javolution.xml.XMLObjectWriter;
+import javolution.xml.stream.XMLStreamException;
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+
+/**
+ * Implementation of {@link DesignStructureMatrix} for values of the algebraic
+ * field {@link Dependency} whose cells are stored outside of the Java heap.
+ * <br>
+ * <br>
+ * The cells are packed one bit per cell, like in {@link PackedDependencyDSM},
+ * into direct buffers or into buffers mapped over a scratch file. The storage
+ * is split in chunks of at most {@link #CHUNK_SIZE} bytes, each holding whole
+ * rows, to get around the 2 GB limit of a single buffer. Only the name and
+ * cluster mappings and one <code>int</code> per row stay on the heap. <br>
+ * <br>
+ * {@link #swap(int, int)}, {@link #shift(int, int)}, {@link #clone()} and
+ * {@link #applyPermutation(int[])} work directly on the buffers. Rows are
+ * reordered through the row index, so only the columns have to be moved in the
+ * buffers. {@link #getMap()} is only kept for compatibility; it returns a
+ * detached copy of the whole matrix on the heap. {@link #close()} releases the
+ * storage without waiting for the garbage collector.
+ */
+public class OffHeapDependencyDSM implements DesignStructureMatrix<Dependency>, Closeable {
+
+    /**
+     * The logger.
+     */
+    private static Logger logger = Logger.getLogger(OffHeapDependencyDSM.class);
+
+    /**
+     * The largest number of bytes in a single buffer.
+     */
+    public static final int CHUNK_SIZE = 1 << 30;
+
+    /**
+     * The instance of <code>sun.misc.Unsafe</code>, on Java 9 and later.
+     */
+    private static final Object UNSAFE;
+
+    /**
+     * The method <code>sun.misc.Unsafe.invokeCleaner(ByteBuffer)</code>, on
+     * Java 9 and later, or null.
+     */
+    private static final Method INVOKE_CLEANER;
+
+    /**
+     * The method <code>sun.nio.ch.DirectBuffer.cleaner()</code>, on Java 8,
+     * or null.
+     */
+    private static final Method CLEANER;
+
+    /**
+     * The method <code>sun.misc.Cleaner.clean()</code>, on Java 8, or null.
+     */
+    private static final Method CLEAN;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        Method cleaner = null;
+        Method clean = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            invokeCleaner = null;
+            try {
+                cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+                clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+            } catch (ReflectiveOperationException | RuntimeException f) {
+                cleaner = clean = null;
+                logger.warn("Buffers cannot be released on this JVM, they are freed when garbage collected: " + f);
+            }
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+        CLEANER = cleaner;
+        CLEAN = clean;
+    }
+
+    /**
+     * The cluster end position mappings.
+     */
+    protected Map<String, Integer> clusterEndPositionMappings = new HashMap<String, Integer>();
+
+    /**
+     * The cluster start position mappings.
+     */
+    protected Map<String, Integer> clusterStartPositionMappings = new HashMap<String, Integer>();
+
+    /**
+     * The names and positions of the elements.
+     */
+    protected ElementDictionary elements = new ElementDictionary();
+
+    /**
+     * The directory of the scratch files, or null for direct buffers.
+     */
+    protected File scratchDirectory;
+
+    /**
+     * The number of elements.
+     */
+    protected int size;
+
+    /**
+     * The number of words in a row.
+     */
+    protected int rowWords;
+
+    /**
+     * The number of rows in a chunk.
+     */
+    protected int rowsPerChunk;
+
+    /**
+     * The storage slot of each row.
+     */
+    protected int[] rowSlots = new int[0];
+
+    /**
+     * The chunks.
+     */
+    protected LongBuffer[] chunks = new LongBuffer[0];
+
+    /**
+     * The buffers viewed by the chunks, kept to release them.
+     */
+    protected ByteBuffer[] buffers = new ByteBuffer[0];
+
+    /**
+     * The scratch directory of the DSM being read from XML by the current
+     * thread, so that it is read straight into its final storage.
+     */
+    private static final ThreadLocal<File> loadingScratchDirectory = new ThreadLocal<File>();
+
+    /**
+     * Instantiates a new empty off heap dependency dsm.
+     */
+    public OffHeapDependencyDSM() {
+        super();
+    }
+
+    /**
+     * Instantiates a new off heap dependency dsm without any dependencies,
+     * stored in direct buffers.
+     *
+     * @param _cluster_end_position_mappings   the _cluster_end_position_mappings
+     * @param _cluster_start_position_mappings the _cluster_start_position_mappings
+     * @param _name_position_mappings          the _name_position_mappings
+     * @param _position_name_mappings          the _position_name_mappings
+     * @param size                             the number of elements
+     */
+    public OffHeapDependencyDSM(
+            Map<String, Integer> _cluster_end_position_mappings,
+            Map<String, Integer> _cluster_start_position_mappings,
+            Map<String, Integer> _name_position_mappings,
+            Map<Integer, String> _position_name_mappings,
+            int size) {
+        this(_cluster_end_position_mappings, _cluster_start_position_mappings,
+                _name_position_mappings, _position_name_mappings, size, null);
+    }
+
+    /**
+     * Instantiates a new off heap dependency dsm without any dependencies. The
+     * cells are stored in buffers mapped over a scratch file created in the
+     * given directory; the file is deleted as soon as it is mapped.
+     *
+     * @param _cluster_end_position_mappings   the _cluster_end_position_mappings
+     * @param _cluster_start_position_mappings the _cluster_start_position_mappings
+     * @param _name_position_mappings          the _name_position_mappings
+     * @param _position_name_mappings          the _position_name_mappings
+     * @param size                             the number of elements
+     * @param scratchDirectory                 the directory of the scratch file,
+     *                                         or null for direct buffers
+     */
+    public OffHeapDependencyDSM(
+            Map<String, Integer> _cluster_end_position_mappings,
+            Map<String, Integer> _cluster_start_position_mappings,
+            Map<String, Integer> _name_position_mappings,
+            Map<Integer, String> _position_name_mappings,
+            int size, File scratchDirectory) {
+        this.clusterEndPositionMappings = _cluster_end_position_mappings;
+        this.clusterStartPositionMappings = _cluster_start_position_mappings;
+        this.elements = new ElementDictionary(_position_name_mappings, _name_position_mappings);
+        this.scratchDirectory = scratchDirectory;
+        allocate(size);
+    }
+
+    /**
+     * Instantiates a new off heap dependency dsm with the same elements,
+     * clusters and dependencies as the given DSM.
+     *
+     * @param dsm              the DSM to copy
+     * @param scratchDirectory the directory of the scratch file, or null for
+     *                         direct buffers
+     */
+    public OffHeapDependencyDSM(DesignStructureMatrix<Dependency> dsm, File scratchDirectory) {
+        this(new HashMap<String, Integer>(dsm.getClusterEndPositionMappings()),
+                new HashMap<String, Integer>(dsm.getClusterStartPositionMappings()),
+                new HashMap<String, Integer>(dsm.getNamePositionMappings()),
+                new HashMap<Integer, String>(dsm.getPositionNameMappings()),
+                dsm.getSize(), scratchDirectory);
+        // the rows are still in their own slots, and only the dependencies are visited
+        for (int i = 0; i < size; i++) {
+            final LongBuffer chunk = chunk(i);
+            final int offset = offset(i);
+            dsm.forEachDependencyInRow(i, column -> setBit(chunk, offset, column, true));
+        }
+    }
+
+    /**
+     * Allocates zeroed storage for the given number of elements, with every
+     * row in its own slot.
+     *
+     * @param size the number of elements
+     */
+    private void allocate(int size) {
+        this.size = size;
+        this.rowWords = (size + 63) >>> 6;
+        this.rowsPerChunk = Math.max(1, CHUNK_SIZE / Math.max(1, rowWords << 3));
+        this.rowSlots = new int[size];
+        for (int i = 0; i < size; i++) {
+            rowSlots[i] = i;
+        }
+        int chunkCount = (size + rowsPerChunk - 1) / rowsPerChunk;
+        this.chunks = new LongBuffer[chunkCount];
+        this.buffers = new ByteBuffer[chunkCount];
+        try {
+            if (scratchDirectory == null) {
+                for (int c = 0; c < chunkCount; c++) {
+                    buffers[c] = ByteBuffer.allocateDirect(chunkBytes(c));
+                    chunks[c] = buffers[c].order(ByteOrder.nativeOrder()).asLongBuffer();
+                }
+            } else {
+                File scratchFile = File.createTempFile("jdsm", ".dsm", scratchDirectory);
+                RandomAccessFile file = new RandomAccessFile(scratchFile, "rw");
+                try {
+                    FileChannel channel = file.getChannel();
+                    long offset = 0;
+                    for (int c = 0; c < chunkCount; c++) {
+                        int bytes = chunkBytes(c);
+                        buffers[c] = channel.map(FileChannel.MapMode.READ_WRITE, offset, bytes);
+                        chunks[c] = buffers[c].order(ByteOrder.nativeOrder()).asLongBuffer();
+                        offset += bytes;
+                    }
+                } finally {
+                    file.close();
+                    if (!scratchFile.delete()) {
+                        scratchFile.deleteOnExit();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not allocate the DSM storage", e);
+        }
+    }
+
+    /**
+     * Number of bytes of a chunk.
+     *
+     * @param chunk the chunk
+     * @return the number of bytes
+     */
+    private int chunkBytes(int chunk) {
+        int rows = Math.min(rowsPerChunk, size - chunk * rowsPerChunk);
+        return rows * rowWords << 3;
+    }
+
+    /**
+     * Gets the chunk of a storage slot.
+     *
+     * @param slot the slot
+     * @return the chunk
+     */
+    private LongBuffer chunk(int slot) {
+        return chunks[slot / rowsPerChunk];
+    }
+
+    /**
+     * Gets the index in its chunk of the first word of a storage slot.
+     *
+     * @param slot the slot
+     * @return the index
+     */
+    private int offset(int slot) {
+        return (slot % rowsPerChunk) * rowWords;
+    }
+
+    /**
+     * Moves the bits [low + 1, high] of a row to [low, high - 1].
+     *
+     * @param chunk  the chunk of the row
+     * @param offset the index of the first word of the row
+     * @param low    the first bit of the range
+     * @param high   the last bit of the range
+     */
+    private void shiftBitsDown(LongBuffer chunk, int offset, int low, int high) {
+        int lastWord = (high - 1) >>> 6;
+        long word = chunk.get(offset + (low >>> 6));
+        for (int w = low >>> 6; w <= lastWord; w++) {
+            long next = w + 1 < rowWords ? chunk.get(offset + w + 1) : 0L;
+            long shifted = (word >>> 1) | (next << 63);
+            long mask = PackedDependencyDSM.rangeMask(w, low, high - 1);
+            chunk.put(offset + w, (word & ~mask) | (shifted & mask));
+            word = next;
+        }
+    }
+
+    /**
+     * Moves the bits [low, high - 1] of a row to [low + 1, high].
+     *
+     * @param chunk  the chunk of the row
+     * @param offset the index of the first word of the row
+     * @param low    the first bit of the range
+     * @param high   the last bit of the range
+     */
+    private void shiftBitsUp(LongBuffer chunk, int offset, int low, int high) {
+        int firstWord = (low + 1) >>> 6;
+        long word = chunk.get(offset + (high >>> 6));
+        for (int w = high >>> 6; w >= firstWord; w--) {
+            long previous = w > 0 ? chunk.get(offset + w - 1) : 0L;
+            long shifted = (word << 1) | (previous >>> 63);
+            long mask = PackedDependencyDSM.rangeMask(w, low + 1, high);
+            chunk.put(offset + w, (word & ~mask) | (shifted & mask));
+            word = previous;
+        }
+    }
+
+    /**
+     * Sets or clears a single bit of a row.
+     *
+     * @param chunk  the chunk of the row
+     * @param offset the index of the first word of the row
+     * @param column the column
+     * @param value  the value
+     */
+    private static void setBit(LongBuffer chunk, int offset, int column, boolean value) {
+        int index = offset + (column >>> 6);
+        if (value) {
+            chunk.put(index, chunk.get(index) | (1L << column));
+        } else {
+            chunk.put(index, chunk.get(index) & ~(1L << column));
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getClusterEndPositionMappings()
+     */
+    public Map<String, Integer> getClusterEndPositionMappings() {
+        return clusterEndPositionMappings;
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getClusterStartPositionMappings()
+     */
+    public Map<String, Integer> getClusterStartPositionMappings() {
+        return clusterStartPositionMappings;
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getNamePositionMappings()
+     */
+    public Map<String, Integer> getNamePositionMappings() {
+        return elements.getNamePositionMappings();
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getPositionNameMappings()
+     */
+    public Map<Integer, String> getPositionNameMappings() {
+        return elements.getPositionNameMappings();
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getName(int)
+     */
+    public String getName(int position) {
+        return elements.getName(position);
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getPosition(java.lang.String)
+     */
+    public int getPosition(String name) {
+        return elements.getPosition(name);
+    }
+
+    /**
+     * Gets a detached copy of the matrix on the heap. Changes to the returned
+     * array are not reflected in this DSM; use
+     * {@link #set(int, int, Dependency)} instead.
+     *
+     * @return the map
+     */
+    public Dependency[][] getMap() {
+        Dependency[][] map = new Dependency[size][size];
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                map[i][j] = get(i, j);
+            }
+        }
+        return map;
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getSize()
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#get(int, int)
+     */
+    public Dependency get(int row, int column) {
+        int slot = rowSlots[row];
+        return (chunk(slot).get(offset(slot) + (column >>> 6)) & (1L << column)) != 0
+                ? Dependency.YES : Dependency.NO;
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#set(int, int, java.lang.Object)
+     */
+    public void set(int row, int column, Dependency value) {
+        int slot = rowSlots[row];
+        setBit(chunk(slot), offset(slot), column, value.booleanValue());
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#hasDependency(int, int)
+     */
+    public boolean hasDependency(int row, int column) {
+        int slot = rowSlots[row];
+        return (chunk(slot).get(offset(slot) + (column >>> 6)) & (1L << column)) != 0;
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#forEachDependencyInRow(int, java.util.function.IntConsumer)
+     */
+    public void forEachDependencyInRow(int row, IntConsumer action) {
+        int slot = rowSlots[row];
+        LongBuffer chunk = chunk(slot);
+        int offset = offset(slot);
+        for (int w = 0; w < rowWords; w++) {
+            long word = chunk.get(offset + w);
+            while (word != 0) {
+                action.accept((w << 6) + Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#forEachDependencyInColumn(int, java.util.function.IntConsumer)
+     */
+    public void forEachDependencyInColumn(int column, IntConsumer action) {
+        int w = column >>> 6;
+        long bit = 1L << column;
+        for (int row = 0; row < size; row++) {
+            int slot = rowSlots[row];
+            if ((chunk(slot).get(offset(slot) + w) & bit) != 0) {
+                action.accept(row);
+            }
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getRowDegree(int)
+     */
+    public int getRowDegree(int row) {
+        int slot = rowSlots[row];
+        LongBuffer chunk = chunk(slot);
+        int offset = offset(slot);
+        int degree = 0;
+        for (int w = 0; w < rowWords; w++) {
+            degree += Long.bitCount(chunk.get(offset + w));
+        }
+        return degree;
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getColumnDegree(int)
+     */
+    public int getColumnDegree(int column) {
+        int w = column >>> 6;
+        long bit = 1L << column;
+        int degree = 0;
+        for (int row = 0; row < size; row++) {
+            int slot = rowSlots[row];
+            if ((chunk(slot).get(offset(slot) + w) & bit) != 0) {
+                degree++;
+            }
+        }
+        return degree;
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.dsm.DesignStructureMatrix#prettyPrint()
+     */
+    public void prettyPrint() {
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                System.out.print("\t" + get(i, j));
+            }
+            System.out.println("");
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.dsm.DesignStructureMatrix#resetClusters()
+     */
+    public void resetClusters() {
+        this.clusterStartPositionMappings = new HashMap<String, Integer>();
+        this.clusterEndPositionMappings = new HashMap<String, Integer>();
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.dsm.DesignStructureMatrix#shift(int, int)
+     */
+    public void shift(int from, int to) {
+        if (from == to) {
+            return;
+        }
+        int movedSlot = rowSlots[from];
+        if (from < to) {
+            System.arraycopy(rowSlots, from + 1, rowSlots, from, to - from);
+            for (int slot = 0; slot < size; slot++) {
+                LongBuffer chunk = chunk(slot);
+                int offset = offset(slot);
+                boolean moved = (chunk.get(offset + (from >>> 6)) & (1L << from)) != 0;
+                shiftBitsDown(chunk, offset, from, to);
+                setBit(chunk, offset, to, moved);
+            }
+        } else {
+            System.arraycopy(rowSlots, to, rowSlots, to + 1, from - to);
+            for (int slot = 0; slot < size; slot++) {
+                LongBuffer chunk = chunk(slot);
+                int offset = offset(slot);
+                boolean moved = (chunk.get(offset + (from >>> 6)) & (1L << from)) != 0;
+                shiftBitsUp(chunk, offset, to, from);
+                setBit(chunk, offset, to, moved);
+            }
+        }
+        rowSlots[to] = movedSlot;
+        elements.shift(from, to);
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.dsm.DesignStructureMatrix#swap(int, int)
+     */
+    public void swap(int from, int to) {
+        int temp = rowSlots[from];
+        rowSlots[from] = rowSlots[to];
+        rowSlots[to] = temp;
+
+        int fromWord = from >>> 6;
+        int toWord = to >>> 6;
+        long fromMask = 1L << from;
+        long toMask = 1L << to;
+        for (int slot = 0; slot < size; slot++) {
+            LongBuffer chunk = chunk(slot);
+            int offset = offset(slot);
+            long fromValue = chunk.get(offset + fromWord);
+            long toValue = chunk.get(offset + toWord);
+            if (((fromValue & fromMask) != 0) != ((toValue & toMask) != 0)) {
+                chunk.put(offset + fromWord, chunk.get(offset + fromWord) ^ fromMask);
+                chunk.put(offset + toWord, chunk.get(offset + toWord) ^ toMask);
+            }
+        }
+
+        elements.swap(from, to);
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#applyPermutation(int[])
+     */
+    public void applyPermutation(int[] order) {
+        int[] newPosition = new int[size];
+        int[] permutedSlots = new int[size];
+        for (int i = 0; i < size; i++) {
+            newPosition[order[i]] = i;
+            permutedSlots[i] = rowSlots[order[i]];
+        }
+        long[] row = new long[rowWords];
+        long[] permutedRow = new long[rowWords];
+        for (int slot = 0; slot < size; slot++) {
+            LongBuffer chunk = chunk(slot);
+            int offset = offset(slot);
+            for (int w = 0; w < rowWords; w++) {
+                row[w] = chunk.get(offset + w);
+                permutedRow[w] = 0L;
+            }
+            for (int w = 0; w < rowWords; w++) {
+                long word = row[w];
+                while (word != 0) {
+                    int column = newPosition[(w << 6) + Long.numberOfTrailingZeros(word)];
+                    permutedRow[column >>> 6] |= 1L << column;
+                    word &= word - 1;
+                }
+            }
+            for (int w = 0; w < rowWords; w++) {
+                chunk.put(offset + w, permutedRow[w]);
+            }
+        }
+        elements.applyPermutation(order);
+        rowSlots = permutedSlots;
+    }
+
+    /**
+     * Clones the DSM into new buffers of the same kind, copying the storage
+     * chunk by chunk.
+     *
+     * @return the design structure matrix< dependency>
+     */
+    public DesignStructureMatrix<Dependency> clone() {
+        OffHeapDependencyDSM clone = new OffHeapDependencyDSM(
+                new HashMap<String, Integer>(clusterEndPositionMappings),
+                new HashMap<String, Integer>(clusterStartPositionMappings),
+                elements.getNamePositionMappings(),
+                elements.getPositionNameMappings(),
+                size, scratchDirectory);
+        for (int c = 0; c < chunks.length; c++) {
+            LongBuffer source = chunks[c].duplicate();
+            source.clear();
+            LongBuffer target = clone.chunks[c].duplicate();
+            target.clear();
+            target.put(source);
+        }
+        clone.rowSlots = rowSlots.clone();
+        return clone;
+    }
+
+    /**
+     * Transposes the matrix 64x64 bits at a time, into new buffers of the same
+     * kind.
+     *
+     * @return a transposed design structure matrix; flipped along the diagonal
+     */
+    public DesignStructureMatrix<Dependency> transpose() {
+        OffHeapDependencyDSM transposed = new OffHeapDependencyDSM(
+                new HashMap<String, Integer>(clusterEndPositionMappings),
+                new HashMap<String, Integer>(clusterStartPositionMappings),
+                elements.getNamePositionMappings(),
+                elements.getPositionNameMappings(),
+                size, scratchDirectory);
+        long[] block = new long[64];
+        for (int blockRow = 0; blockRow < rowWords; blockRow++) {
+            for (int blockColumn = 0; blockColumn < rowWords; blockColumn++) {
+                for (int k = 0; k < 64; k++) {
+                    int row = (blockRow << 6) + k;
+                    if (row < size) {
+                        int slot = rowSlots[row];
+                        block[k] = chunk(slot).get(offset(slot) + blockColumn);
+                    } else {
+                        block[k] = 0L;
+                    }
+                }
+                PackedDependencyDSM.transposeBlock(block);
+                for (int k = 0; k < 64; k++) {
+                    int row = (blockColumn << 6) + k;
+                    if (row < size) {
+                        transposed.chunk(row).put(transposed.offset(row) + blockRow, block[k]);
+                    }
+                }
+            }
+        }
+        return transposed;
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#saveToXml(java.io.OutputStream)
+     */
+    public void saveToXml(OutputStream outputStream) throws XMLStreamException {
+        XMLObjectWriter writer = XMLObjectWriter.newInstance(outputStream);
+        writer.setIndentation("\t");
+        writer.write(this, this.getClass().getCanonicalName(), OffHeapDependencyDSM.class);
+        writer.close();
+        logger.info("Saved DSM to XML");
+    }
+
+    /**
+     * Deserializes the object from XML format, straight into direct buffers,
+     * or into buffers mapped over a scratch file if a scratch directory was
+     * set. The storage held before is released.
+     *
+     * @param outputStream stream to read XML from
+     * @throws XMLStreamException the XML stream exception
+     */
+    public void loadFromXml(InputStream outputStream) throws XMLStreamException {
+        XMLObjectReader reader = XMLObjectReader.newInstance(outputStream);
+        OffHeapDependencyDSM dsm;
+        loadingScratchDirectory.set(scratchDirectory);
+        try {
+            dsm = reader.read(this.getClass().getCanonicalName(), OffHeapDependencyDSM.class);
+        } finally {
+            loadingScratchDirectory.remove();
+        }
+        reader.close();
+        releaseStorage();
+        clusterEndPositionMappings = dsm.clusterEndPositionMappings;
+        clusterStartPositionMappings = dsm.clusterStartPositionMappings;
+        elements = dsm.elements;
+        size = dsm.size;
+        rowWords = dsm.rowWords;
+        rowsPerChunk = dsm.rowsPerChunk;
+        rowSlots = dsm.rowSlots;
+        chunks = dsm.chunks;
+        buffers = dsm.buffers;
+        logger.info("Loaded DSM from XML");
+    }
+
+    /**
+     * Releases the storage of the cells right away, instead of when the DSM is
+     * garbage collected, and empties the DSM. The mapped buffers are unmapped,
+     * so the space of their scratch file is freed. The DSM must not be used
+     * afterwards, except to load another one; its clones are not affected.
+     * <br>
+     * <br>
+     * The buffers are released through <code>sun.misc.Unsafe</code> on Java 9
+     * and later, which needs the <code>jdk.unsupported</code> module, and
+     * through their cleaner on Java 8.
+     *
+     * @throws UnsupportedOperationException if the JVM gives no way to release
+     *                                       the buffers, in which case the DSM
+     *                                       is left as it is
+     */
+    public void close() {
+        if (!canRelease()) {
+            throw new UnsupportedOperationException("The buffers of the DSM storage cannot be released on this JVM");
+        }
+        releaseStorage();
+    }
+
+    /**
+     * Checks if the buffers can be released before being garbage collected.
+     *
+     * @return true, if {@link #close()} can release the storage
+     */
+    public static boolean canRelease() {
+        return INVOKE_CLEANER != null || CLEANER != null;
+    }
+
+    /**
+     * Releases the buffers if the JVM allows it, and empties the DSM.
+     */
+    private void releaseStorage() {
+        if (canRelease()) {
+            for (ByteBuffer buffer : buffers) {
+                release(buffer);
+            }
+        }
+        size = 0;
+        rowWords = 0;
+        rowSlots = new int[0];
+        chunks = new LongBuffer[0];
+        buffers = new ByteBuffer[0];
+    }
+
+    /**
+     * Frees the memory of a direct or mapped buffer, which must not be a slice
+     * or a duplicate, through <code>sun.misc.Unsafe</code> or its cleaner.
+     *
+     * @param buffer the buffer
+     */
+    private static void release(ByteBuffer buffer) {
+        try {
+            if (INVOKE_CLEANER != null) {
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+            } else {
+                Object cleaner = CLEANER.invoke(buffer);
+                if (cleaner != null) {
+                    CLEAN.invoke(cleaner);
+                }
+            }
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not release a buffer of the DSM storage", e);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        StringBuilder result = new StringBuilder("\n");
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                result.append(get(i, j)).append('\t');
+            }
+            result.append('\n');
+        }
+        return result.toString();
+    }
+
+    /**
+     * The Constant XML. The format is the one of {@link PackedDependencyDSM}:
+     * each row is written as the comma separated list of the columns it
+     * depends on.
+     */
+    protected static final XMLFormat<OffHeapDependencyDSM> XML = new XMLFormat<OffHeapDependencyDSM>(OffHeapDependencyDSM.class) {
+
+        @Override
+        public void read(InputElement xml, OffHeapDependencyDSM dsm)
+                throws XMLStreamException {
+            dsm.clusterEndPositionMappings = xml.get("clusterEndPositionMappings");
+            dsm.clusterStartPositionMappings = xml.get("clusterStartPositionMappings");
+            Map<String, Integer> namePositionMappings = xml.get("namePositionMappings");
+            Map<Integer, String> positionNameMappings = xml.get("positionNameMappings");
+            dsm.elements = new ElementDictionary(positionNameMappings, namePositionMappings);
+            Integer size = xml.get("size");
+            dsm.scratchDirectory = loadingScratchDirectory.get();
+            dsm.allocate(size);
+            for (int i = 0; i < size; i++) {
+                String row = xml.get("row");
+                if (row.length() > 0) {
+                    for (String column : row.split(",")) {
+                        dsm.set(i, Integer.parseInt(column), Dependency.YES);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void write(OffHeapDependencyDSM dsm, OutputElement xml)
+                throws XMLStreamException {
+            xml.add(dsm.clusterEndPositionMappings, "clusterEndPositionMappings");
+            xml.add(dsm.clusterStartPositionMappings, "clusterStartPositionMappings");
+            xml.add(new HashMap<String, Integer>(dsm.elements.getNamePositionMappings()), "namePositionMappings");
+            xml.add(new HashMap<Integer, String>(dsm.elements.getPositionNameMappings()), "positionNameMappings");
+            xml.add(dsm.size, "size");
+            for (int i = 0; i < dsm.size; i++) {
+                int slot = dsm.rowSlots[i];
+                LongBuffer chunk = dsm.chunk(slot);
+                int offset = dsm.offset(slot);
+                StringBuilder columns = new StringBuilder();
+                for (int w = 0; w < dsm.rowWords; w++) {
+                    long word = chunk.get(offset + w);
+                    while (word != 0) {
+                        if (columns.length() > 0) {
+                            columns.append(',');
+                        }
+                        columns.append((w << 6) + Long.numberOfTrailingZeros(word));
+                        word &= word - 1;
+                    }
+                }
+                xml.add(columns.toString(), "row");
+            }
+        }
+    };
+
+}
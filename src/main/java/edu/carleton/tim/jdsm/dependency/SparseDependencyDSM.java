@@ -0,0 +1,650 @@
+/*
+Copyright (c) 2008, Roberto Milev
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or 
+without modification, are permitted provided that the following 
+conditions are met:
+
+    * Redistributions of source code must retain the above 
+      copyright notice, this list of conditions and the following 
+      disclaimer.
+    * Redistributions in binary form must reproduce the above 
+      copyright notice, this list of conditions and the following 
+      disclaimer in the documentation and/or other materials 
+      provided with the distribution.
+    * Neither the name of the Carleton University nor the names 
+      of its contributors may be used to endorse or promote 
+      products derived from this software without specific prior 
+      written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR 
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF 
+ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+*/
+package edu.carleton.tim.jdsm.dependency;
+
+import edu.carleton.tim.jdsm.DesignStructureMatrix;
+import edu.carleton.tim.jdsm.ElementDictionary;
+import javolution.xml.XMLFormat;
+import javolution.xml.XMLObjectReader;
+import javolution.xml.XMLObjectWriter;
+import javolution.xml.stream.XMLStreamException;
+import org.apache.log4j.Logger;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+
+/**
+ * Implementation of {@link DesignStructureMatrix} for values of the algebraic
+ * field {@link Dependency} that only stores the existing dependencies. <br>
+ * <br>
+ * Every element keeps a sorted list of the elements it depends on (its row)
+ * and of the elements depending on it (its column), so the memory used is
+ * proportional to the number of elements plus the number of dependencies.
+ * The lists are indexed by element, not by position: the current ordering is
+ * a permutation that maps positions to elements and back. {@link #swap(int, int)}
+ * and {@link #shift(int, int)} only relabel positions and never move any
+ * dependency. <br>
+ * <br>
+ * The dependencies of a row or a column can be walked with
+ * {@link #getRowDegree(int)} and {@link #getRowDependency(int, int)} (and the
+ * column counterparts) without scanning the whole row. {@link #getMap()} is
+ * only kept for compatibility; it returns a detached dense copy of the matrix.
+ */
+public class SparseDependencyDSM implements DesignStructureMatrix<Dependency> {
+
+    /**
+     * The logger.
+     */
+    private static Logger logger = Logger.getLogger(SparseDependencyDSM.class);
+
+    /**
+     * Shared list for elements without dependencies.
+     */
+    private static final int[] EMPTY = new int[0];
+
+    /**
+     * The cluster end position mappings.
+     */
+    protected Map<String, Integer> clusterEndPositionMappings = new HashMap<String, Integer>();
+
+    /**
+     * The cluster start position mappings.
+     */
+    protected Map<String, Integer> clusterStartPositionMappings = new HashMap<String, Integer>();
+
+    /**
+     * The names and positions of the elements.
+     */
+    protected ElementDictionary elements = new ElementDictionary();
+
+    /**
+     * The number of elements.
+     */
+    protected int size;
+
+    /**
+     * The element at each position.
+     */
+    protected int[] elementAt = EMPTY;
+
+    /**
+     * The position of each element.
+     */
+    protected int[] positionOf = EMPTY;
+
+    /**
+     * For each element, the sorted elements it depends on.
+     */
+    protected int[][] successors = new int[0][];
+
+    /**
+     * The number of used entries in each list of successors.
+     */
+    protected int[] successorCounts = EMPTY;
+
+    /**
+     * For each element, the sorted elements that depend on it.
+     */
+    protected int[][] predecessors = new int[0][];
+
+    /**
+     * The number of used entries in each list of predecessors.
+     */
+    protected int[] predecessorCounts = EMPTY;
+
+    /**
+     * Instantiates a new empty sparse dependency dsm.
+     */
+    public SparseDependencyDSM() {
+        super();
+    }
+
+    /**
+     * Instantiates a new sparse dependency dsm without any dependencies.
+     *
+     * @param _cluster_end_position_mappings   the _cluster_end_position_mappings
+     * @param _cluster_start_position_mappings the _cluster_start_position_mappings
+     * @param _name_position_mappings          the _name_position_mappings
+     * @param _position_name_mappings          the _position_name_mappings
+     * @param size                             the number of elements
+     */
+    public SparseDependencyDSM(
+            Map<String, Integer> _cluster_end_position_mappings,
+            Map<String, Integer> _cluster_start_position_mappings,
+            Map<String, Integer> _name_position_mappings,
+            Map<Integer, String> _position_name_mappings,
+            int size) {
+        this.clusterEndPositionMappings = _cluster_end_position_mappings;
+        this.clusterStartPositionMappings = _cluster_start_position_mappings;
+        this.elements = new ElementDictionary(_position_name_mappings, _name_position_mappings);
+        init(size);
+    }
+
+    /**
+     * Instantiates a new sparse dependency dsm with the same elements, clusters
+     * and dependencies as the given DSM.
+     *
+     * @param dsm the DSM to copy
+     */
+    public SparseDependencyDSM(DesignStructureMatrix<Dependency> dsm) {
+        this(new HashMap<String, Integer>(dsm.getClusterEndPositionMappings()),
+                new HashMap<String, Integer>(dsm.getClusterStartPositionMappings()),
+                new HashMap<String, Integer>(dsm.getNamePositionMappings()),
+                new HashMap<Integer, String>(dsm.getPositionNameMappings()),
+                dsm.getSize());
+        // only the dependencies are visited; the rows come in order, so each
+        // predecessor is appended to its list
+        final int[] columns = new int[size];
+        final int[] count = new int[1];
+        for (int i = 0; i < size; i++) {
+            count[0] = 0;
+            dsm.forEachDependencyInRow(i, column -> columns[count[0]++] = column);
+            Arrays.sort(columns, 0, count[0]);
+            successors[i] = Arrays.copyOf(columns, count[0]);
+            successorCounts[i] = count[0];
+            for (int k = 0; k < count[0]; k++) {
+                add(predecessors, predecessorCounts, columns[k], i);
+            }
+        }
+    }
+
+    /**
+     * Allocates the storage for the given number of elements, in identity
+     * order and without dependencies.
+     *
+     * @param size the number of elements
+     */
+    private void init(int size) {
+        this.size = size;
+        this.elementAt = new int[size];
+        this.positionOf = new int[size];
+        this.successors = new int[size][];
+        this.successorCounts = new int[size];
+        this.predecessors = new int[size][];
+        this.predecessorCounts = new int[size];
+        for (int i = 0; i < size; i++) {
+            elementAt[i] = i;
+            positionOf[i] = i;
+            successors[i] = EMPTY;
+            predecessors[i] = EMPTY;
+        }
+    }
+
+    /**
+     * Adds a value to a sorted list, unless it is already present.
+     *
+     * @param lists  the lists
+     * @param counts the number of used entries in each list
+     * @param list   the index of the list
+     * @param value  the value
+     */
+    private static void add(int[][] lists, int[] counts, int list, int value) {
+        int count = counts[list];
+        int index = Arrays.binarySearch(lists[list], 0, count, value);
+        if (index < 0) {
+            index = -index - 1;
+            int[] values = lists[list];
+            if (count == values.length) {
+                values = Arrays.copyOf(values, Math.max(4, count + (count >> 1)));
+                lists[list] = values;
+            }
+            System.arraycopy(values, index, values, index + 1, count - index);
+            values[index] = value;
+            counts[list] = count + 1;
+        }
+    }
+
+    /**
+     * Removes a value from a sorted list, if present.
+     *
+     * @param lists  the lists
+     * @param counts the number of used entries in each list
+     * @param list   the index of the list
+     * @param value  the value
+     */
+    private static void remove(int[][] lists, int[] counts, int list, int value) {
+        int count = counts[list];
+        int index = Arrays.binarySearch(lists[list], 0, count, value);
+        if (index >= 0) {
+            System.arraycopy(lists[list], index + 1, lists[list], index, count - index - 1);
+            counts[list] = count - 1;
+        }
+    }
+
+    /**
+     * Copies lists, trimming each one to its used entries.
+     *
+     * @param lists  the lists
+     * @param counts the number of used entries in each list
+     * @return the copy
+     */
+    private static int[][] copy(int[][] lists, int[] counts) {
+        int[][] copy = new int[lists.length][];
+        for (int i = 0; i < lists.length; i++) {
+            copy[i] = counts[i] == 0 ? EMPTY : Arrays.copyOf(lists[i], counts[i]);
+        }
+        return copy;
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getClusterEndPositionMappings()
+     */
+    public Map<String, Integer> getClusterEndPositionMappings() {
+        return clusterEndPositionMappings;
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getClusterStartPositionMappings()
+     */
+    public Map<String, Integer> getClusterStartPositionMappings() {
+        return clusterStartPositionMappings;
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getNamePositionMappings()
+     */
+    public Map<String, Integer> getNamePositionMappings() {
+        return elements.getNamePositionMappings();
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getPositionNameMappings()
+     */
+    public Map<Integer, String> getPositionNameMappings() {
+        return elements.getPositionNameMappings();
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getName(int)
+     */
+    public String getName(int position) {
+        return elements.getName(position);
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getPosition(java.lang.String)
+     */
+    public int getPosition(String name) {
+        return elements.getPosition(name);
+    }
+
+    /**
+     * Gets a detached dense copy of the matrix. Changes to the returned array
+     * are not reflected in this DSM; use {@link #set(int, int, Dependency)}
+     * instead.
+     *
+     * @return the map
+     */
+    public Dependency[][] getMap() {
+        Dependency[][] map = new Dependency[size][size];
+        for (int i = 0; i < size; i++) {
+            Arrays.fill(map[i], Dependency.NO);
+            int element = elementAt[i];
+            for (int k = 0; k < successorCounts[element]; k++) {
+                map[i][positionOf[successors[element][k]]] = Dependency.YES;
+            }
+        }
+        return map;
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#getSize()
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#get(int, int)
+     */
+    public Dependency get(int row, int column) {
+        int element = elementAt[row];
+        return Arrays.binarySearch(successors[element], 0, successorCounts[element],
+                elementAt[column]) >= 0 ? Dependency.YES : Dependency.NO;
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#set(int, int, java.lang.Object)
+     */
+    public void set(int row, int column, Dependency value) {
+        int element = elementAt[row];
+        int dependable = elementAt[column];
+        if (value.booleanValue()) {
+            add(successors, successorCounts, element, dependable);
+            add(predecessors, predecessorCounts, dependable, element);
+        } else {
+            remove(successors, successorCounts, element, dependable);
+            remove(predecessors, predecessorCounts, dependable, element);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#hasDependency(int, int)
+     */
+    public boolean hasDependency(int row, int column) {
+        int element = elementAt[row];
+        return Arrays.binarySearch(successors[element], 0, successorCounts[element],
+                elementAt[column]) >= 0;
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#forEachDependencyInRow(int, java.util.function.IntConsumer)
+     */
+    public void forEachDependencyInRow(int row, IntConsumer action) {
+        int element = elementAt[row];
+        int[] list = successors[element];
+        for (int k = 0, count = successorCounts[element]; k < count; k++) {
+            action.accept(positionOf[list[k]]);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#forEachDependencyInColumn(int, java.util.function.IntConsumer)
+     */
+    public void forEachDependencyInColumn(int column, IntConsumer action) {
+        int element = elementAt[column];
+        int[] list = predecessors[element];
+        for (int k = 0, count = predecessorCounts[element]; k < count; k++) {
+            action.accept(positionOf[list[k]]);
+        }
+    }
+
+    /**
+     * Gets the number of dependencies in a row.
+     *
+     * @param row the row
+     * @return the number of elements the element at the row depends on
+     */
+    public int getRowDegree(int row) {
+        return successorCounts[elementAt[row]];
+    }
+
+    /**
+     * Gets the column of a dependency in a row. Dependencies are not returned
+     * in column order.
+     *
+     * @param row   the row
+     * @param index the index of the dependency, from 0 to
+     *              {@link #getRowDegree(int)} - 1
+     * @return the column of the dependency
+     */
+    public int getRowDependency(int row, int index) {
+        return positionOf[successors[elementAt[row]][index]];
+    }
+
+    /**
+     * Gets the number of dependencies in a column.
+     *
+     * @param column the column
+     * @return the number of elements that depend on the element at the column
+     */
+    public int getColumnDegree(int column) {
+        return predecessorCounts[elementAt[column]];
+    }
+
+    /**
+     * Gets the row of a dependency in a column. Dependencies are not returned
+     * in row order.
+     *
+     * @param column the column
+     * @param index  the index of the dependency, from 0 to
+     *               {@link #getColumnDegree(int)} - 1
+     * @return the row of the dependency
+     */
+    public int getColumnDependency(int column, int index) {
+        return positionOf[predecessors[elementAt[column]][index]];
+    }
+
+    /**
+     * Gets the total number of dependencies.
+     *
+     * @return the number of cells with a value of {@link Dependency#YES}
+     */
+    public long getDependencyCount() {
+        long count = 0;
+        for (int i = 0; i < size; i++) {
+            count += successorCounts[i];
+        }
+        return count;
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.dsm.DesignStructureMatrix#prettyPrint()
+     */
+    public void prettyPrint() {
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                System.out.print("\t" + get(i, j));
+            }
+            System.out.println("");
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.dsm.DesignStructureMatrix#resetClusters()
+     */
+    public void resetClusters() {
+        this.clusterStartPositionMappings = new HashMap<String, Integer>();
+        this.clusterEndPositionMappings = new HashMap<String, Integer>();
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.dsm.DesignStructureMatrix#shift(int, int)
+     */
+    public void shift(int from, int to) {
+        if (from == to) {
+            return;
+        }
+        int movedElement = elementAt[from];
+        if (from < to) {
+            for (int i = from; i < to; i++) {
+                elementAt[i] = elementAt[i + 1];
+                positionOf[elementAt[i]] = i;
+            }
+        } else {
+            for (int i = from; i > to; i--) {
+                elementAt[i] = elementAt[i - 1];
+                positionOf[elementAt[i]] = i;
+            }
+        }
+        elementAt[to] = movedElement;
+        positionOf[movedElement] = to;
+        elements.shift(from, to);
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.dsm.DesignStructureMatrix#swap(int, int)
+     */
+    public void swap(int from, int to) {
+        int fromElement = elementAt[from];
+        int toElement = elementAt[to];
+        elementAt[from] = toElement;
+        elementAt[to] = fromElement;
+        positionOf[toElement] = from;
+        positionOf[fromElement] = to;
+
+        elements.swap(from, to);
+    }
+
+    /**
+     * Reorders the DSM by relabelling the positions; no dependency is moved.
+     *
+     * @param order a permutation of the positions 0..N-1
+     */
+    public void applyPermutation(int[] order) {
+        int[] permuted = new int[size];
+        for (int i = 0; i < size; i++) {
+            permuted[i] = elementAt[order[i]];
+        }
+        for (int i = 0; i < size; i++) {
+            positionOf[permuted[i]] = i;
+        }
+        elementAt = permuted;
+        elements.applyPermutation(order);
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#clone()
+     */
+    public DesignStructureMatrix<Dependency> clone() {
+        SparseDependencyDSM clone = new SparseDependencyDSM();
+        clone.clusterEndPositionMappings = new HashMap<String, Integer>(clusterEndPositionMappings);
+        clone.clusterStartPositionMappings = new HashMap<String, Integer>(clusterStartPositionMappings);
+        clone.elements = elements.clone();
+        clone.size = size;
+        clone.elementAt = elementAt.clone();
+        clone.positionOf = positionOf.clone();
+        clone.successors = copy(successors, successorCounts);
+        clone.successorCounts = successorCounts.clone();
+        clone.predecessors = copy(predecessors, predecessorCounts);
+        clone.predecessorCounts = predecessorCounts.clone();
+        return clone;
+    }
+
+    /**
+     * Transposes the matrix by exchanging the rows and columns of every
+     * element.
+     *
+     * @return a transposed design structure matrix; flipped along the diagonal
+     */
+    public DesignStructureMatrix<Dependency> transpose() {
+        SparseDependencyDSM transposed = (SparseDependencyDSM) clone();
+        int[][] lists = transposed.successors;
+        int[] counts = transposed.successorCounts;
+        transposed.successors = transposed.predecessors;
+        transposed.successorCounts = transposed.predecessorCounts;
+        transposed.predecessors = lists;
+        transposed.predecessorCounts = counts;
+        return transposed;
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#saveToXml(java.io.OutputStream)
+     */
+    public void saveToXml(OutputStream outputStream) throws XMLStreamException {
+        XMLObjectWriter writer = XMLObjectWriter.newInstance(outputStream);
+        writer.setIndentation("\t");
+        writer.write(this, this.getClass().getCanonicalName(), SparseDependencyDSM.class);
+        writer.close();
+        logger.info("Saved DSM to XML");
+    }
+
+    /* (non-Javadoc)
+     * @see edu.carleton.tim.jdsm.DesignStructureMatrix#loadFromXml(java.io.InputStream)
+     */
+    public void loadFromXml(InputStream outputStream) throws XMLStreamException {
+        XMLObjectReader reader = XMLObjectReader.newInstance(outputStream);
+        SparseDependencyDSM dsm = reader.read(this.getClass().getCanonicalName(), SparseDependencyDSM.class);
+        reader.close();
+        clusterEndPositionMappings = dsm.clusterEndPositionMappings;
+        clusterStartPositionMappings = dsm.clusterStartPositionMappings;
+        elements = dsm.elements;
+        size = dsm.size;
+        elementAt = dsm.elementAt;
+        positionOf = dsm.positionOf;
+        successors = dsm.successors;
+        successorCounts = dsm.successorCounts;
+        predecessors = dsm.predecessors;
+        predecessorCounts = dsm.predecessorCounts;
+        logger.info("Loaded DSM from XML");
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        StringBuilder result = new StringBuilder("\n");
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                result.append(get(i, j)).append('\t');
+            }
+            result.append('\n');
+        }
+        return result.toString();
+    }
+
+    /**
+     * The Constant XML. Each row is written as the comma separated list of the
+     * columns it depends on, in the current ordering.
+     */
+    protected static final XMLFormat<SparseDependencyDSM> XML = new XMLFormat<SparseDependencyDSM>(SparseDependencyDSM.class) {
+
+        @Override
+        public void read(InputElement xml, SparseDependencyDSM dsm)
+                throws XMLStreamException {
+            dsm.clusterEndPositionMappings = xml.get("clusterEndPositionMappings");
+            dsm.clusterStartPositionMappings = xml.get("clusterStartPositionMappings");
+            Map<String, Integer> namePositionMappings = xml.get("namePositionMappings");
+            Map<Integer, String> positionNameMappings = xml.get("positionNameMappings");
+            dsm.elements = new ElementDictionary(positionNameMappings, namePositionMappings);
+            Integer size = xml.get("size");
+            dsm.init(size);
+            for (int i = 0; i < size; i++) {
+                String row = xml.get("row");
+                if (row.length() > 0) {
+                    for (String column : row.split(",")) {
+                        dsm.set(i, Integer.parseInt(column), Dependency.YES);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void write(SparseDependencyDSM dsm, OutputElement xml)
+                throws XMLStreamException {
+            xml.add(dsm.clusterEndPositionMappings, "clusterEndPositionMappings");
+            xml.add(dsm.clusterStartPositionMappings, "clusterStartPositionMappings");
+            xml.add(new HashMap<String, Integer>(dsm.elements.getNamePositionMappings()), "namePositionMappings");
+            xml.add(new HashMap<Integer, String>(dsm.elements.getPositionNameMappings()), "positionNameMappings");
+            xml.add(dsm.size, "size");
+            for (int i = 0; i < dsm.size; i++) {
+                StringBuilder columns = new StringBuilder();
+                for (int k = 0; k < dsm.getRowDegree(i); k++) {
+                    if (k > 0) {
+                        columns.append(',');
+                    }
+                    columns.append(dsm.getRowDependency(i, k));
+                }
+                xml.add(columns.toString(), "row");
+            }
+        }
+    };
+
+}
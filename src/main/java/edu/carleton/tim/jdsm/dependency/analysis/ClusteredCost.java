@@ -34,7 +34,9 @@ ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 */
 package edu.carleton.tim.jdsm.dependency.analysis;
 
+import edu.carleton.tim.jdsm.ClusterIndex;
 import edu.carleton.tim.jdsm.DesignStructureMatrix;
+import edu.carleton.tim.jdsm.ProgressMonitor;
 import edu.carleton.tim.jdsm.dependency.Dependency;
 import org.apache.log4j.Logger;
 import org.jscience.mathematics.number.Rational;
@@ -42,8 +44,15 @@ import org.jscience.mathematics.number.Rational;
 import javax.xml.bind.JAXBException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -55,7 +64,8 @@ import java.util.Random;
  * <br>
  * - Computes vertical busses @see {@link #computeVerticalBusses(double)}<br>
  * - Initiates clusters by placing each element in its own singleton cluster<br>
- * - Executes a stochastic clustering algorithm<br>
+ * - Executes a stochastic clustering algorithm, scheduled as chosen with
+ * {@link Scheduling}, optionally followed by a simulated annealing<br>
  * - Computes clustered cost<br>
  * - Computes relative clustered cost<br>
  *
@@ -63,11 +73,62 @@ import java.util.Random;
  */
 public class ClusteredCost {
 
+    /**
+     * The order in which the clustering algorithm bids for the elements.
+     */
+    public enum Scheduling {
+
+        /**
+         * Bids for elements picked at random, until N elements in a row found
+         * no better cluster.
+         */
+        RANDOM,
+
+        /**
+         * Bids for the elements of a worklist, in first in first out order.
+         * The worklist starts with all the elements; after a move, the
+         * dependencies and dependents of the moved element and the elements of
+         * its source and target clusters are added to it again. When it is
+         * empty, all the elements are added again, and the clustering stops
+         * when none of them moves.
+         */
+        WORKLIST,
+
+        /**
+         * Bids for the elements of the worklist of {@link #WORKLIST}, picked
+         * at random.
+         */
+        SHUFFLED_WORKLIST
+    }
+
     /**
      * The logger.
      */
     private static Logger logger = Logger.getLogger(ClusteredCost.class);
 
+    /**
+     * The probability of accepting an average increase in cost at the start
+     * of an annealing.
+     */
+    private static final double INITIAL_ACCEPTANCE = 0.3;
+
+    /**
+     * The probability of accepting an average increase in cost at the end of
+     * an annealing.
+     */
+    private static final double FINAL_ACCEPTANCE = 0.001;
+
+    /**
+     * The number of moves tried to measure the average increase in cost.
+     */
+    private static final int TEMPERATURE_SAMPLES = 1000;
+
+    /**
+     * The number of iterations of an annealing between two updates of the
+     * temperature.
+     */
+    private static final int COOLING_INTERVAL = 256;
+
     /**
      * The dependency cost sum.
      */
@@ -88,6 +149,171 @@ public class ClusteredCost {
      */
     protected DesignStructureMatrix<Dependency> dsm;
 
+    /**
+     * The clusters of the dsm, while clustering.
+     */
+    protected ClusterIndex clusters;
+
+    /**
+     * The clusters in the order in which they bid for an element.
+     */
+    private int[] biddingOrder;
+
+    /**
+     * The index of each cluster in {@link #biddingOrder}.
+     */
+    private int[] biddingRank;
+
+    /**
+     * The bidding ranks of the clusters that are not removed and have no
+     * dependencies inside, counted as in {@link #intraDependencies}.
+     */
+    private BitSet independentClusters;
+
+    /**
+     * The element at each position, while clustering. The elements are
+     * numbered by their positions when the clustering started.
+     */
+    private int[] elementAt;
+
+    /**
+     * The position of each element, while clustering.
+     */
+    private int[] positionOf;
+
+    /**
+     * The row of the DSM holding each element, while clustering. The moves
+     * only change the positions in the bookkeeping, and the DSM is reordered
+     * once by {@link #applyPositions()} when they are done.
+     */
+    private int[] rowOf;
+
+    /**
+     * The cluster of each element, while clustering.
+     */
+    private int[] clusterOf;
+
+    /**
+     * The number of elements of each cluster, while clustering.
+     */
+    private int[] clusterSizes;
+
+    /**
+     * The index in {@link #outTargets} of the first dependency of each
+     * element, followed by the number of dependencies.
+     */
+    private int[] outOffsets;
+
+    /**
+     * The elements each element depends on, element by element.
+     */
+    private int[] outTargets;
+
+    /**
+     * The index in {@link #inSources} of the first dependent of each element,
+     * followed by the number of dependencies.
+     */
+    private int[] inOffsets;
+
+    /**
+     * The elements depending on each element, element by element.
+     */
+    private int[] inSources;
+
+    /**
+     * Whether each element is a vertical bus.
+     */
+    private boolean[] verticalBus;
+
+    /**
+     * The number of dependencies (i, j) inside each cluster such that j is not
+     * a vertical bus.
+     */
+    private long[] intraDependencies;
+
+    /**
+     * The number of elements of each cluster that depend on themselves and
+     * are not vertical busses, which {@link #intraDependencies} counts but
+     * which cost nothing.
+     */
+    private long[] selfDependencies;
+
+    /**
+     * For the element bidden for, the number of its dependencies on the
+     * elements of each cluster that are not vertical busses.
+     */
+    private long[] outLinks;
+
+    /**
+     * For the element bidden for, the number of the elements of each cluster
+     * that are not vertical busses and depend on it.
+     */
+    private long[] inLinks;
+
+    /**
+     * For the element bidden for, the number of the elements of each cluster
+     * that depend on it.
+     */
+    private long[] allInLinks;
+
+    /**
+     * Whether each cluster has a link with the element bidden for.
+     */
+    private boolean[] linked;
+
+    /**
+     * The clusters having a link with the element bidden for.
+     */
+    private int[] linkedClusters;
+
+    /**
+     * The number of clusters having a link with the element bidden for.
+     */
+    private int linkedCount;
+
+    /**
+     * Whether the element bidden for depends on itself.
+     */
+    private long ownDependency;
+
+    /**
+     * The number of dependencies inside the cluster of the element bidden for
+     * that are in its row or its column, counted as in
+     * {@link #intraDependencies}.
+     */
+    private long ownIntraDependencies;
+
+    /**
+     * The cluster winning the current bidding.
+     */
+    private int winnignCluster;
+
+    /**
+     * The change in cost of moving the element to the winning cluster.
+     */
+    private long maximumDecreaseInCost;
+
+    /**
+     * The elements to bid for, in a circular buffer, while clustering with a
+     * worklist.
+     */
+    private int[] worklist;
+
+    /**
+     * The index in {@link #worklist} of the next element to bid for.
+     */
+    private int worklistHead;
+
+    /**
+     * The number of elements in {@link #worklist}.
+     */
+    private int worklistCount;
+
+    /**
+     * Whether each element is in {@link #worklist}.
+     */
+    private boolean[] queued;
+
     /**
      * Compute clustered cost.
      *
@@ -96,14 +322,186 @@ public class ClusteredCost {
      * @return a structure containing all outputs of the analysis
      */
     public static ClusteredCostResult computeClusteredCost(DesignStructureMatrix<Dependency> dsm, double verticalBusTreshold) {
+        return computeClusteredCost(dsm, verticalBusTreshold, new ProgressMonitor());
+    }
+
+    /**
+     * Compute clustered cost, stopping the clustering early if the monitor
+     * asks to. The costs are then those of the clusters found so far.
+     *
+     * @param dsm                 the DSM to be analyzed
+     * @param verticalBusTreshold the vertical bus treshold
+     * @param monitor             the monitor of the clustering
+     * @return a structure containing all outputs of the analysis
+     */
+    public static ClusteredCostResult computeClusteredCost(DesignStructureMatrix<Dependency> dsm, double verticalBusTreshold,
+                                                           ProgressMonitor monitor) {
+        return computeClusteredCost(dsm, verticalBusTreshold, Scheduling.RANDOM, monitor);
+    }
+
+    /**
+     * Compute clustered cost with the given scheduling of the clustering,
+     * stopping the clustering early if the monitor asks to. The costs are then
+     * those of the clusters found so far. The seed of the clustering is drawn
+     * at random and logged, as for all the overloads without a seed; passing
+     * it to
+     * {@link #computeClusteredCost(DesignStructureMatrix, double, Scheduling, long, ProgressMonitor)}
+     * reproduces the clusters.
+     *
+     * @param dsm                 the DSM to be analyzed
+     * @param verticalBusTreshold the vertical bus treshold
+     * @param scheduling          the order in which the elements are bidden for
+     * @param monitor             the monitor of the clustering
+     * @return a structure containing all outputs of the analysis
+     */
+    public static ClusteredCostResult computeClusteredCost(DesignStructureMatrix<Dependency> dsm, double verticalBusTreshold,
+                                                           Scheduling scheduling, ProgressMonitor monitor) {
+        return computeClusteredCost(dsm, verticalBusTreshold, scheduling, drawSeed(), monitor);
+    }
+
+    /**
+     * Compute clustered cost with a seeded clustering, stopping the
+     * clustering early if the monitor asks to. The same DSM, treshold,
+     * scheduling and seed always give the same clusters, as long as the
+     * clustering is not stopped; the seeds of the runs of
+     * {@link #computeBestClusteredCost(DesignStructureMatrix, double, Scheduling, int, long, ExecutorService, ProgressMonitor)}
+     * reproduce them.
+     *
+     * @param dsm                 the DSM to be analyzed
+     * @param verticalBusTreshold the vertical bus treshold
+     * @param scheduling          the order in which the elements are bidden for
+     * @param seed                the seed of the random number generator of
+     *                            the clustering
+     * @param monitor             the monitor of the clustering
+     * @return a structure containing all outputs of the analysis
+     */
+    public static ClusteredCostResult computeClusteredCost(DesignStructureMatrix<Dependency> dsm, double verticalBusTreshold,
+                                                           Scheduling scheduling, long seed, ProgressMonitor monitor) {
+        return computeClusteredCostOfClone(dsm.clone(), verticalBusTreshold, scheduling, new Random(seed), monitor);
+    }
+
+    /**
+     * Runs the clustering several times from different seeds on several
+     * threads, and keeps the clusters with the lowest cost.
+     *
+     * @param dsm                 the DSM to be analyzed
+     * @param verticalBusTreshold the vertical bus treshold
+     * @param runs                the number of runs
+     * @param seed                the seed from which the seeds of the runs are
+     *                            drawn
+     * @param parallelism         the number of threads to use
+     * @return the best result with the statistics of every run
+     * @throws InterruptedException if the thread is interrupted while waiting
+     *                              for the runs
+     */
+    public static MultiStartResult computeBestClusteredCost(DesignStructureMatrix<Dependency> dsm, double verticalBusTreshold,
+                                                            int runs, long seed, int parallelism) throws InterruptedException {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return computeBestClusteredCost(dsm, verticalBusTreshold, Scheduling.RANDOM, runs, seed, pool,
+                    new ProgressMonitor());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Runs the clustering several times on the threads of an executor, and
+     * keeps the clusters with the lowest cost, the first run winning among
+     * equals. <br>
+     * <br>
+     * The seeds of the runs are drawn from <code>seed</code>, so the whole
+     * computation is reproducible, and each run clusters its own clone of the
+     * DSM. The seed of a run, given to
+     * {@link #computeClusteredCost(DesignStructureMatrix, double, Scheduling, long, ProgressMonitor)},
+     * reproduces its clusters. The progress reported is the number of runs
+     * done; when the monitor stops the computation, the runs stop with the
+     * clusters found so far.
+     *
+     * @param dsm                 the DSM to be analyzed
+     * @param verticalBusTreshold the vertical bus treshold
+     * @param scheduling          the order in which the elements are bidden for
+     * @param runs                the number of runs
+     * @param seed                the seed from which the seeds of the runs are
+     *                            drawn
+     * @param executor            the executor running the runs
+     * @param monitor             the monitor of the computation
+     * @return the best result with the statistics of every run
+     * @throws InterruptedException if the thread is interrupted while waiting
+     *                              for the runs
+     */
+    public static MultiStartResult computeBestClusteredCost(final DesignStructureMatrix<Dependency> dsm,
+                                                            final double verticalBusTreshold, final Scheduling scheduling,
+                                                            int runs, long seed, ExecutorService executor,
+                                                            final ProgressMonitor monitor) throws InterruptedException {
+        if (runs < 1) {
+            throw new IllegalArgumentException("The number of runs must be at least 1: " + runs);
+        }
+        logger.info("Started " + runs + " clustering runs.");
+        Random seeds = new Random(seed);
+        final long[] runSeeds = new long[runs];
+        final long[] runningTimes = new long[runs];
+        final ProgressMonitor runMonitor = new RunMonitor(monitor);
+        List<Callable<ClusteredCostResult>> tasks = new ArrayList<Callable<ClusteredCostResult>>();
+        monitor.begin("Clustering runs", runs);
+        for (int run = 0; run < runs; run++) {
+            final int index = run;
+            runSeeds[run] = seeds.nextLong();
+            // cloning updates the sharing of the DSM, so the clones are made on this thread
+            final DesignStructureMatrix<Dependency> clone = dsm.clone();
+            tasks.add(() -> {
+                long start = System.nanoTime();
+                ClusteredCostResult result = computeClusteredCostOfClone(clone, verticalBusTreshold, scheduling,
+                        new Random(runSeeds[index]), runMonitor);
+                runningTimes[index] = System.nanoTime() - start;
+                monitor.worked(1);
+                return result;
+            });
+        }
+
+        List<Future<ClusteredCostResult>> futures = executor.invokeAll(tasks);
+        ClusteredCostResult[] results = new ClusteredCostResult[runs];
+        int best = 0;
+        for (int run = 0; run < runs; run++) {
+            try {
+                results[run] = futures.get(run).get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw (RuntimeException) cause;
+            }
+            if (results[run].getClusteredCost() < results[best].getClusteredCost()) {
+                best = run;
+            }
+        }
+        logger.info("Best clustered cost: " + results[best].getClusteredCost() + " in run " + best
+                + " of seed " + runSeeds[best]);
+        return new MultiStartResult(results, best, runSeeds, runningTimes);
+    }
+
+    /**
+     * Compute clustered cost on a clone of the DSM, which is clustered.
+     *
+     * @param clone               the clone of the DSM to be analyzed
+     * @param verticalBusTreshold the vertical bus treshold
+     * @param scheduling          the order in which the elements are bidden for
+     * @param random              the random number generator of the clustering
+     * @param monitor             the monitor of the clustering
+     * @return a structure containing all outputs of the analysis
+     */
+    private static ClusteredCostResult computeClusteredCostOfClone(DesignStructureMatrix<Dependency> clone,
+                                                                   double verticalBusTreshold, Scheduling scheduling,
+                                                                   Random random, ProgressMonitor monitor) {
         logger.info("Started computing clustered cost.");
-        ClusteredCost instance = new ClusteredCost(dsm.clone());
+        ClusteredCost instance = new ClusteredCost(clone);
         instance.computeVerticalBusses(verticalBusTreshold);
         logger.info("Computed " + instance.verticalBusses.size() + " vertical busses.");
         instance.initClusters();
         logger.info("Initiated clusters.");
         logger.info("Started clustering algorithm.");
-        instance.performClustering();
+        instance.performClustering(scheduling, random, monitor);
         logger.info("Finished clustering algorithm.");
         logger.info("Computed " + instance.dsm.getClusterStartPositionMappings().size() + " clusters.");
 
@@ -126,6 +524,58 @@ public class ClusteredCost {
      * @return a structure containing all outputs of the analysis
      */
     public static ClusteredCostResult computeClusteredCost(DesignStructureMatrix<Dependency> dsm, String... verticalBuses) {
+        return computeClusteredCost(dsm, new ProgressMonitor(), verticalBuses);
+    }
+
+    /**
+     * Compute clustered cost, stopping the clustering early if the monitor
+     * asks to. The costs are then those of the clusters found so far.
+     *
+     * @param dsm           the DSM to be analyzed
+     * @param monitor       the monitor of the clustering
+     * @param verticalBuses the names of vertical buses
+     * @return a structure containing all outputs of the analysis
+     */
+    public static ClusteredCostResult computeClusteredCost(DesignStructureMatrix<Dependency> dsm, ProgressMonitor monitor,
+                                                           String... verticalBuses) {
+        return computeClusteredCost(dsm, Scheduling.RANDOM, monitor, verticalBuses);
+    }
+
+    /**
+     * Compute clustered cost with the given scheduling of the clustering,
+     * stopping the clustering early if the monitor asks to. The costs are then
+     * those of the clusters found so far. The seed is drawn at random and
+     * logged; passing it to
+     * {@link #computeClusteredCost(DesignStructureMatrix, Scheduling, long, ProgressMonitor, String...)}
+     * reproduces the clusters.
+     *
+     * @param dsm           the DSM to be analyzed
+     * @param scheduling    the order in which the elements are bidden for
+     * @param monitor       the monitor of the clustering
+     * @param verticalBuses the names of vertical buses
+     * @return a structure containing all outputs of the analysis
+     */
+    public static ClusteredCostResult computeClusteredCost(DesignStructureMatrix<Dependency> dsm, Scheduling scheduling,
+                                                           ProgressMonitor monitor, String... verticalBuses) {
+        return computeClusteredCost(dsm, scheduling, drawSeed(), monitor, verticalBuses);
+    }
+
+    /**
+     * Compute clustered cost with a seeded clustering, stopping the
+     * clustering early if the monitor asks to. The same DSM, vertical buses,
+     * scheduling and seed always give the same clusters, as long as the
+     * clustering is not stopped.
+     *
+     * @param dsm           the DSM to be analyzed
+     * @param scheduling    the order in which the elements are bidden for
+     * @param seed          the seed of the random number generator of the
+     *                      clustering
+     * @param monitor       the monitor of the clustering
+     * @param verticalBuses the names of vertical buses
+     * @return a structure containing all outputs of the analysis
+     */
+    public static ClusteredCostResult computeClusteredCost(DesignStructureMatrix<Dependency> dsm, Scheduling scheduling,
+                                                           long seed, ProgressMonitor monitor, String... verticalBuses) {
         logger.info("Started computing clustered cost.");
         ClusteredCost instance = new ClusteredCost(dsm.clone());
         instance.verticalBusses = Arrays.asList(verticalBuses);
@@ -133,7 +583,7 @@ public class ClusteredCost {
         instance.initClusters();
         logger.info("Initiated clusters.");
         logger.info("Started clustering algorithm.");
-        instance.performClustering();
+        instance.performClustering(scheduling, new Random(seed), monitor);
         logger.info("Finished clustering algorithm.");
         logger.info("Computed " + instance.dsm.getClusterStartPositionMappings().size() + " clusters.");
 
@@ -143,107 +593,595 @@ public class ClusteredCost {
         ClusteredCostResult result = instance.new ClusteredCostResult(instance.dsm,
                 instance.verticalBusses, clusteredCost, relativeClusteredCost);
 
-        logger.info("Computed clustered cost: " + clusteredCost);
-        logger.info("Computed relative clustered cost: " + relativeClusteredCost);
-        return result;
+        logger.info("Computed clustered cost: " + clusteredCost);
+        logger.info("Computed relative clustered cost: " + relativeClusteredCost);
+        return result;
+    }
+
+    /**
+     * Compute clustered cost with a simulated annealing of a given number of
+     * iterations.
+     *
+     * @param dsm                 the DSM to be analyzed
+     * @param verticalBusTreshold the vertical bus treshold
+     * @param iterations          the number of moves tried by the annealing
+     * @param seed                the seed of the random number generator
+     * @return a structure containing all outputs of the analysis
+     */
+    public static ClusteredCostResult computeAnnealedClusteredCost(DesignStructureMatrix<Dependency> dsm,
+                                                                   double verticalBusTreshold, long iterations, long seed) {
+        return computeAnnealedClusteredCost(dsm, verticalBusTreshold, iterations, 0, TimeUnit.NANOSECONDS, seed,
+                new ProgressMonitor());
+    }
+
+    /**
+     * Compute clustered cost with a simulated annealing lasting a given time.
+     *
+     * @param dsm                 the DSM to be analyzed
+     * @param verticalBusTreshold the vertical bus treshold
+     * @param timeout             the running time of the clustering
+     * @param unit                the unit of the timeout
+     * @param seed                the seed of the random number generator
+     * @return a structure containing all outputs of the analysis
+     */
+    public static ClusteredCostResult computeAnnealedClusteredCost(DesignStructureMatrix<Dependency> dsm,
+                                                                   double verticalBusTreshold, long timeout,
+                                                                   TimeUnit unit, long seed) {
+        return computeAnnealedClusteredCost(dsm, verticalBusTreshold, 0, timeout, unit, seed, new ProgressMonitor());
+    }
+
+    /**
+     * Compute clustered cost with a simulated annealing, trading running time
+     * for a lower cost. <br>
+     * <br>
+     * The elements are first clustered with {@link Scheduling#WORKLIST}. The
+     * annealing then tries to move a random element, other than a vertical
+     * bus, to a random cluster it has a link with, or to an empty cluster of
+     * its own. A move lowering the cost is always made, and a move raising it
+     * by d is made with probability exp(-d / T). The temperature T falls
+     * geometrically with the fraction of the budget used, from a temperature
+     * accepting an average increase with probability 30% to one accepting it
+     * with probability 0.1%. The change in cost of a move is computed from the
+     * same bookkeeping as the bids, but exactly on the cost model of
+     * {@link #computeDependencyCost(int, int)}, and the clusters with the
+     * lowest cost met are kept, so the result is never worse than the
+     * clustering it started from.
+     * <br>
+     * <br>
+     * The annealing stops when it has tried the given number of moves, when
+     * the clustering has run for the given time, or when the monitor asks to,
+     * whichever comes first; the clusters are then the best ones found so
+     * far. The same arguments give the same clusters when the annealing only
+     * has an iteration budget.
+     *
+     * @param dsm                 the DSM to be analyzed
+     * @param verticalBusTreshold the vertical bus treshold
+     * @param iterations          the number of moves tried by the annealing, or
+     *                            0 for no limit
+     * @param timeout             the running time of the clustering, or 0 for
+     *                            no limit
+     * @param unit                the unit of the timeout
+     * @param seed                the seed of the random number generator
+     * @param monitor             the monitor of the clustering
+     * @return a structure containing all outputs of the analysis
+     */
+    public static ClusteredCostResult computeAnnealedClusteredCost(DesignStructureMatrix<Dependency> dsm,
+                                                                   double verticalBusTreshold, long iterations,
+                                                                   long timeout, TimeUnit unit, long seed,
+                                                                   ProgressMonitor monitor) {
+        if (iterations <= 0 && timeout <= 0) {
+            throw new IllegalArgumentException("The annealing needs a number of iterations or a timeout.");
+        }
+        long start = System.nanoTime();
+        logger.info("Started computing annealed clustered cost.");
+        ClusteredCost instance = new ClusteredCost(dsm.clone());
+        instance.computeVerticalBusses(verticalBusTreshold);
+        logger.info("Computed " + instance.verticalBusses.size() + " vertical busses.");
+        instance.initClusters();
+        logger.info("Initiated clusters.");
+        logger.info("Started clustering algorithm.");
+        Random random = new Random(seed);
+        ProgressMonitor clusteringMonitor = new RunMonitor(monitor);
+        if (timeout > 0) {
+            clusteringMonitor.setTimeout(timeout, unit);
+        }
+        instance.performClustering(Scheduling.WORKLIST, random, clusteringMonitor);
+        logger.info("Finished clustering algorithm with cost " + instance.dependencyCostSum);
+        instance.performAnnealing(iterations, timeout > 0, start + unit.toNanos(timeout), random, monitor);
+        logger.info("Computed " + instance.dsm.getClusterStartPositionMappings().size() + " clusters.");
+
+        long clusteredCost = instance.computeClusteredCost();
+        double relativeClusteredCost = instance.computeRelativeClusteredCost();
+
+        ClusteredCostResult result = instance.new ClusteredCostResult(instance.dsm,
+                instance.verticalBusses, clusteredCost, relativeClusteredCost);
+
+        logger.info("Computed clustered cost: " + clusteredCost);
+        logger.info("Computed relative clustered cost: " + relativeClusteredCost);
+        return result;
+    }
+
+    /**
+     * Perform clustering. Executes a stochastic clustering algorithm to group elements into
+     * a clustering configuration that minimizes the overall cost of the DSM.
+     *
+     * @param dsm                 the DSM to be analyzed
+     * @param verticalBusTreshold the vertical bus treshold
+     * @return a clustered DSM
+     */
+    public static DesignStructureMatrix<Dependency> clusterDsm(DesignStructureMatrix<Dependency> dsm, double verticalBusTreshold) {
+        return clusterDsm(dsm, verticalBusTreshold, new ProgressMonitor());
+    }
+
+    /**
+     * Perform clustering, stopping early if the monitor asks to. The clusters
+     * are then those found so far.
+     *
+     * @param dsm                 the DSM to be analyzed
+     * @param verticalBusTreshold the vertical bus treshold
+     * @param monitor             the monitor of the clustering
+     * @return a clustered DSM
+     */
+    public static DesignStructureMatrix<Dependency> clusterDsm(DesignStructureMatrix<Dependency> dsm, double verticalBusTreshold,
+                                                               ProgressMonitor monitor) {
+        return clusterDsm(dsm, verticalBusTreshold, Scheduling.RANDOM, monitor);
+    }
+
+    /**
+     * Perform clustering with the given scheduling, stopping early if the
+     * monitor asks to. The clusters are then those found so far. The seed is
+     * drawn at random and logged; passing it to
+     * {@link #clusterDsm(DesignStructureMatrix, double, Scheduling, long, ProgressMonitor)}
+     * reproduces the clusters.
+     *
+     * @param dsm                 the DSM to be analyzed
+     * @param verticalBusTreshold the vertical bus treshold
+     * @param scheduling          the order in which the elements are bidden for
+     * @param monitor             the monitor of the clustering
+     * @return a clustered DSM
+     */
+    public static DesignStructureMatrix<Dependency> clusterDsm(DesignStructureMatrix<Dependency> dsm, double verticalBusTreshold,
+                                                               Scheduling scheduling, ProgressMonitor monitor) {
+        return clusterDsm(dsm, verticalBusTreshold, scheduling, drawSeed(), monitor);
+    }
+
+    /**
+     * Perform a seeded clustering, stopping early if the monitor asks to. The
+     * same DSM, treshold, scheduling and seed always give the same clusters,
+     * as long as the clustering is not stopped.
+     *
+     * @param dsm                 the DSM to be analyzed
+     * @param verticalBusTreshold the vertical bus treshold
+     * @param scheduling          the order in which the elements are bidden for
+     * @param seed                the seed of the random number generator of
+     *                            the clustering
+     * @param monitor             the monitor of the clustering
+     * @return a clustered DSM
+     */
+    public static DesignStructureMatrix<Dependency> clusterDsm(DesignStructureMatrix<Dependency> dsm, double verticalBusTreshold,
+                                                               Scheduling scheduling, long seed, ProgressMonitor monitor) {
+        logger.info("Started computing clustered cost.");
+        ClusteredCost instance = new ClusteredCost(dsm.clone());
+        instance.computeVerticalBusses(verticalBusTreshold);
+        logger.info("Computed " + instance.verticalBusses.size() + " vertical busses.");
+        instance.initClusters();
+        logger.info("Initiated clusters.");
+        logger.info("Started clustering algorithm.");
+        instance.performClustering(scheduling, new Random(seed), monitor);
+        return instance.dsm;
+    }
+
+    /**
+     * Draws the seed of a clustering asked for without one, and logs it so
+     * that the clustering can be reproduced.
+     *
+     * @return the seed
+     */
+    private static long drawSeed() {
+        long seed = new Random().nextLong();
+        logger.info("Clustering with seed " + seed);
+        return seed;
+    }
+
+    /**
+     * Compute vertical busses.
+     *
+     * @param treshold the treshold
+     * @return the list< string>
+     */
+    public List<String> computeVerticalBusses(double treshold) {
+        int mapSize = dsm.getSize();
+        List<String> result = new ArrayList<String>();
+
+        for (int j = 0; j < mapSize; j++) {
+            double dependenciesCount = dsm.getColumnDegree(j);
+            if ((dependenciesCount / mapSize) > treshold) {
+                result.add(dsm.getName(j));
+            }
+        }
+        this.verticalBusses = result;
+        return result;
+    }
+
+    /**
+     * Instantiates a new clustered cost.
+     *
+     * @param dsm the dsm
+     * @throws JAXBException the JAXB exception
+     */
+    private ClusteredCost(DesignStructureMatrix<Dependency> dsm) {
+        this.dsm = dsm;
+    }
+
+    /**
+     * Compute clustered cost.
+     *
+     * @return the long
+     */
+    private long computeClusteredCost() {
+        // cells without a dependency cost nothing, so only the dependencies are visited
+        final long[] cost = new long[1];
+        for (int i = 0; i < dsm.getSize(); i++) {
+            final int row = i;
+            dsm.forEachDependencyInRow(row, column -> {
+                if (row != column) {
+                    cost[0] += computeDependencyCost(row, column);
+                }
+            });
+        }
+        return cost[0];
+    }
+
+    /**
+     * Compute optimal clustering, stopping early if the monitor asks to.
+     *
+     * @param scheduling the order in which the elements are bidden for
+     * @param random     the random number generator
+     * @param monitor    the monitor of the clustering
+     * @return the design structure matrix< dependency>
+     */
+    private DesignStructureMatrix<Dependency> performClustering(Scheduling scheduling, Random random,
+                                                               ProgressMonitor monitor) {
+        initClusters();
+        initBookkeeping();
+        dependencyCostSum = computeClusteredCost();
+        if (scheduling == Scheduling.RANDOM) {
+            performRandomClustering(random, monitor);
+        } else {
+            performWorklistClustering(scheduling == Scheduling.SHUFFLED_WORKLIST ? random : null, monitor);
+        }
+        applyPositions();
+        clusters.writeTo(dsm);
+        return dsm;
+    }
+
+    /**
+     * Bids for elements picked at random. The clustering stops when N
+     * elements in a row found no better cluster, or when the monitor asks to;
+     * the progress reported is the number of elements in a row without a
+     * move.
+     *
+     * @param random  the random number generator
+     * @param monitor the monitor of the clustering
+     */
+    private void performRandomClustering(Random random, ProgressMonitor monitor) {
+        int noImprovementCount = 0;
+        int randomPosition;
+        long iterations = 0;
+        monitor.begin("Clustering", dsm.getSize());
+        while (noImprovementCount < dsm.getSize()) {
+            if (monitor.isStopped()) {
+                logger.info("Stopped clustering after " + iterations + " iterations.");
+                break;
+            }
+            if (++iterations % dsm.getSize() == 0) {
+                monitor.setDone(noImprovementCount);
+            }
+            randomPosition = random.nextInt(dsm.getSize());
+            if (!verticalBus[elementAt[randomPosition]]) {
+                int winningCluster = computeWinnigCluster(randomPosition);
+                if (winningCluster >= 0) {
+                    moveToCluster(randomPosition, winningCluster);
+                    noImprovementCount = 0;
+                    logger.debug("Cost sum: " + dependencyCostSum + "\tCluster count: " + clusters.getClusterCount() + "\tMoved element " + randomPosition + " to " + clusters.getName(winningCluster));
+                } else {
+                    noImprovementCount++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Bids for the elements of a worklist, as described by
+     * {@link Scheduling#WORKLIST}. Only the elements whose links with the
+     * clusters, or whose own cluster, changed are bidden for again after a
+     * move, instead of at least N elements picked at random at the end. The
+     * clustering stops when all the elements were bidden for in a row without
+     * a move, or when the monitor asks to; the progress reported is the number
+     * of elements out of the worklist.
+     *
+     * @param random  the random number generator picking the elements, or
+     *                null to bid for them in first in first out order
+     * @param monitor the monitor of the clustering
+     */
+    private void performWorklistClustering(Random random, ProgressMonitor monitor) {
+        int size = dsm.getSize();
+        worklist = new int[size];
+        worklistHead = worklistCount = 0;
+        queued = new boolean[size];
+        long iterations = 0;
+        long moves;
+        monitor.begin("Clustering", size);
+        do {
+            moves = 0;
+            for (int element = 0; element < size; element++) {
+                enqueue(element);
+            }
+            while (worklistCount > 0) {
+                if (monitor.isStopped()) {
+                    logger.info("Stopped clustering after " + iterations + " iterations.");
+                    return;
+                }
+                if (++iterations % size == 0) {
+                    monitor.setDone(size - worklistCount);
+                }
+                int element = dequeue(random);
+                int position = positionOf[element];
+                int winningCluster = computeWinnigCluster(position);
+                if (winningCluster >= 0) {
+                    enqueueNeighbours(element);
+                    enqueueMembers(clusters.getCluster(position));
+                    moveToCluster(position, winningCluster);
+                    enqueueMembers(winningCluster);
+                    moves++;
+                    logger.debug("Cost sum: " + dependencyCostSum + "\tCluster count: " + clusters.getClusterCount() + "\tMoved element " + position + " to " + clusters.getName(winningCluster));
+                }
+            }
+        } while (moves > 0);
+    }
+
+    /**
+     * Improves the clusters with a simulated annealing, as described by
+     * {@link #computeAnnealedClusteredCost(DesignStructureMatrix, double, long, long, TimeUnit, long, ProgressMonitor)}.
+     * The moves only change the bookkeeping, so each takes O(d) for an element
+     * with d links; the best clusters are written to the DSM at the end. The
+     * progress reported is the fraction of the budget used, in thousandths.
+     *
+     * @param iterations  the number of moves to try, or 0 for no limit
+     * @param hasDeadline whether the annealing has a deadline
+     * @param deadline    the deadline, in the time of {@link System#nanoTime()}
+     * @param random      the random number generator
+     * @param monitor     the monitor of the clustering
+     */
+    private void performAnnealing(long iterations, boolean hasDeadline, long deadline, Random random,
+                                  ProgressMonitor monitor) {
+        int size = dsm.getSize();
+        int[] movable = new int[size];
+        int movableCount = 0;
+        for (int element = 0; element < size; element++) {
+            if (!verticalBus[element]) {
+                movable[movableCount++] = element;
+            }
+        }
+        int[] emptyClusters = new int[clusterSizes.length];
+        int emptyCount = 0;
+        for (int cluster = 0; cluster < clusterSizes.length; cluster++) {
+            if (clusterSizes[cluster] == 0) {
+                emptyClusters[emptyCount++] = cluster;
+            }
+        }
+        long annealingStart = System.nanoTime();
+        if (movableCount == 0 || monitor.isStopped() || (hasDeadline && deadline - annealingStart <= 0)) {
+            return;
+        }
+
+        double increaseSum = 0;
+        int increaseCount = 0;
+        for (int k = 0; k < TEMPERATURE_SAMPLES; k++) {
+            int element = movable[random.nextInt(movableCount)];
+            gatherLinks(positionOf[element]);
+            int target = proposeCluster(clusterOf[element], emptyClusters, emptyCount, random);
+            if (target >= 0) {
+                long change = computeChangeInCost(element, target);
+                if (change > 0) {
+                    increaseSum += change;
+                    increaseCount++;
+                }
+            }
+        }
+        double averageIncrease = increaseCount > 0 ? increaseSum / increaseCount : 1;
+        double initialTemperature = -averageIncrease / Math.log(INITIAL_ACCEPTANCE);
+        double finalTemperature = -averageIncrease / Math.log(FINAL_ACCEPTANCE);
+        double temperature = initialTemperature;
+
+        // the cost is followed exactly from here on
+        dependencyCostSum = computeClusteredCost();
+        int[] bestClusterOf = clusterOf.clone();
+        long bestCost = dependencyCostSum;
+        boolean bestSaved = true;
+        long accepted = 0;
+        long iteration = 0;
+        monitor.begin("Annealing", 1000);
+        for (; iterations <= 0 || iteration < iterations; iteration++) {
+            if (iteration % COOLING_INTERVAL == 0) {
+                if (monitor.isStopped()) {
+                    break;
+                }
+                double progress = iterations > 0 ? (double) iteration / iterations : 0;
+                if (hasDeadline) {
+                    long now = System.nanoTime();
+                    progress = Math.max(progress, (double) (now - annealingStart) / (deadline - annealingStart));
+                    if (now - deadline >= 0) {
+                        break;
+                    }
+                }
+                temperature = initialTemperature * Math.pow(finalTemperature / initialTemperature, progress);
+                monitor.setDone((long) (progress * 1000));
+            }
+            int element = movable[random.nextInt(movableCount)];
+            gatherLinks(positionOf[element]);
+            int sourceCluster = clusterOf[element];
+            int targetCluster = proposeCluster(sourceCluster, emptyClusters, emptyCount, random);
+            if (targetCluster < 0) {
+                continue;
+            }
+            long change = computeChangeInCost(element, targetCluster);
+            if (change > 0) {
+                if (random.nextDouble() >= Math.exp(-change / temperature)) {
+                    continue;
+                }
+                // the clusters are only saved when they are about to get worse
+                if (!bestSaved) {
+                    System.arraycopy(clusterOf, 0, bestClusterOf, 0, size);
+                    bestSaved = true;
+                }
+            }
+            if (clusterSizes[targetCluster] == 0) {
+                emptyCount--;
+            }
+            moveElement(element, sourceCluster, targetCluster);
+            if (clusterSizes[sourceCluster] == 0) {
+                emptyClusters[emptyCount++] = sourceCluster;
+            }
+            dependencyCostSum += change;
+            accepted++;
+            if (dependencyCostSum < bestCost) {
+                bestCost = dependencyCostSum;
+                bestSaved = false;
+            }
+        }
+        if (!bestSaved) {
+            System.arraycopy(clusterOf, 0, bestClusterOf, 0, size);
+        }
+        logger.info("Annealed " + iteration + " iterations, " + accepted + " moves, best cost " + bestCost);
+        writeClusters(bestClusterOf);
     }
 
     /**
-     * Perform clustering. Executes a stochastic clustering algorithm to group elements into
-     * a clustering configuration that minimizes the overall cost of the DSM.
+     * Picks at random a cluster to move the element bidden for to, among the
+     * clusters it has a link with and, if it is not alone in its cluster, an
+     * empty cluster.
      *
-     * @param dsm                 the DSM to be analyzed
-     * @param verticalBusTreshold the vertical bus treshold
-     * @return a clustered DSM
+     * @param sourceCluster the cluster of the element
+     * @param emptyClusters the empty clusters, the last one being proposed
+     * @param emptyCount    the number of empty clusters
+     * @param random        the random number generator
+     * @return the cluster, or -1 if there is none
      */
-    public static DesignStructureMatrix<Dependency> clusterDsm(DesignStructureMatrix<Dependency> dsm, double verticalBusTreshold) {
-        logger.info("Started computing clustered cost.");
-        ClusteredCost instance = new ClusteredCost(dsm.clone());
-        instance.computeVerticalBusses(verticalBusTreshold);
-        logger.info("Computed " + instance.verticalBusses.size() + " vertical busses.");
-        instance.initClusters();
-        logger.info("Initiated clusters.");
-        logger.info("Started clustering algorithm.");
-        instance.performClustering();
-        return instance.dsm;
+    private int proposeCluster(int sourceCluster, int[] emptyClusters, int emptyCount, Random random) {
+        int linkedTargets = linked[sourceCluster] ? linkedCount - 1 : linkedCount;
+        boolean canLeave = emptyCount > 0 && clusterSizes[sourceCluster] > 1;
+        int candidates = linkedTargets + (canLeave ? 1 : 0);
+        if (candidates == 0) {
+            return -1;
+        }
+        int pick = random.nextInt(candidates);
+        if (pick == linkedTargets) {
+            return emptyClusters[emptyCount - 1];
+        }
+        for (int k = 0; k < linkedCount; k++) {
+            int cluster = linkedClusters[k];
+            if (cluster != sourceCluster && pick-- == 0) {
+                return cluster;
+            }
+        }
+        throw new IllegalStateException();
     }
 
     /**
-     * Compute vertical busses.
+     * Writes clusters given in the bookkeeping to the DSM. The clusters are
+     * rebuilt from singletons, by moving each element to the first element of
+     * its cluster.
      *
-     * @param treshold the treshold
-     * @return the list< string>
+     * @param elementClusters the cluster of each element
      */
-    public List<String> computeVerticalBusses(double treshold) {
-        int mapSize = dsm.getMap().length;
-        List<String> result = new ArrayList<String>();
-
-        for (int j = 0; j < mapSize; j++) {
-            double dependenciesCount = 0;
-            for (int i = 0; i < mapSize; i++) {
-                if (dsm.getMap()[i][j].booleanValue())
-                    dependenciesCount++;
-            }
-            if ((dependenciesCount / mapSize) > treshold) {
-                result.add(dsm.getPositionNameMappings().get(j));
+    private void writeClusters(int[] elementClusters) {
+        int size = dsm.getSize();
+        int[] clusterAt = new int[size];
+        for (int position = 0; position < size; position++) {
+            clusterAt[position] = elementClusters[elementAt[position]];
+        }
+        int[] firstElements = new int[clusterSizes.length];
+        Arrays.fill(firstElements, -1);
+        initClusters();
+        initBookkeeping();
+        // the elements are now numbered by their positions
+        for (int element = 0; element < size; element++) {
+            int cluster = clusterAt[element];
+            if (firstElements[cluster] < 0) {
+                firstElements[cluster] = element;
+            } else {
+                int position = positionOf[element];
+                gatherLinks(position);
+                moveToCluster(position, clusterOf[firstElements[cluster]]);
             }
         }
-        this.verticalBusses = result;
-        return result;
+        applyPositions();
+        clusters.writeTo(dsm);
+        dependencyCostSum = computeClusteredCost();
     }
 
     /**
-     * Instantiates a new clustered cost.
+     * Adds an element to the worklist, unless it is a vertical bus or already
+     * in the worklist.
      *
-     * @param dsm the dsm
-     * @throws JAXBException the JAXB exception
+     * @param element the element
      */
-    private ClusteredCost(DesignStructureMatrix<Dependency> dsm) {
-        this.dsm = dsm;
+    private void enqueue(int element) {
+        if (!verticalBus[element] && !queued[element]) {
+            queued[element] = true;
+            worklist[(worklistHead + worklistCount) % worklist.length] = element;
+            worklistCount++;
+        }
     }
 
     /**
-     * Compute clustered cost.
+     * Removes an element from the worklist, which must not be empty.
      *
-     * @return the long
+     * @param random the random number generator picking the element, or null
+     *               to take the oldest one
+     * @return the element
      */
-    private long computeClusteredCost() {
-        long cost = 0;
-        for (int i = 0; i < dsm.getMap().length; i++) {
-            for (int j = 0; j < dsm.getMap().length; j++) {
-                if (i != j) {
-                    cost += computeDependencyCost(i, j);
-                }
-            }
+    private int dequeue(Random random) {
+        if (random != null) {
+            int picked = (worklistHead + random.nextInt(worklistCount)) % worklist.length;
+            int swap = worklist[picked];
+            worklist[picked] = worklist[worklistHead];
+            worklist[worklistHead] = swap;
         }
-        return cost;
+        int element = worklist[worklistHead];
+        worklistHead = (worklistHead + 1) % worklist.length;
+        worklistCount--;
+        queued[element] = false;
+        return element;
     }
 
     /**
-     * Compute optimal clustering.
+     * Adds the dependencies and the dependents of an element to the worklist.
      *
-     * @return the design structure matrix< dependency>
+     * @param element the element
      */
-    private DesignStructureMatrix<Dependency> performClustering() {
-        initClusters();
-        Random random = new Random();
-        dependencyCostSum = computeClusteredCost();
-        int noImprovementCount = 0;
-        int randomPosition;
-        while (noImprovementCount < dsm.getMap().length) {
-            randomPosition = random.nextInt(dsm.getMap().length);
-            if (!isVerticalBus(randomPosition)) {
-                String winningCluster = computeWinnigCluster(randomPosition);
-                if (winningCluster != null) {
-                    moveToCluster(randomPosition, winningCluster);
-                    noImprovementCount = 0;
-                    logger.debug("Cost sum: " + dependencyCostSum + "\tCluster count: " + dsm.getClusterStartPositionMappings().size() + "\tMoved element " + randomPosition + " to " + winningCluster);
-                } else {
-                    noImprovementCount++;
-                }
-            }
+    private void enqueueNeighbours(int element) {
+        for (int k = outOffsets[element]; k < outOffsets[element + 1]; k++) {
+            enqueue(outTargets[k]);
+        }
+        for (int k = inOffsets[element]; k < inOffsets[element + 1]; k++) {
+            enqueue(inSources[k]);
+        }
+    }
+
+    /**
+     * Adds the elements of a cluster to the worklist.
+     *
+     * @param cluster the cluster
+     */
+    private void enqueueMembers(int cluster) {
+        if (clusters.isRemoved(cluster)) {
+            return;
+        }
+        for (int position = clusters.getStart(cluster); position <= clusters.getEnd(cluster); position++) {
+            enqueue(elementAt[position]);
         }
-        return dsm;
     }
 
     /**
@@ -256,15 +1194,15 @@ public class ClusteredCost {
     private double computeDependencyCost(int i, int j) {
         //if j is a vertical bus
         if (isVerticalBus(j)) {
-            return dsm.getMap()[i][j].longValue();
+            return dsm.get(i, j).longValue();
         }
         //if i and j are in same cluster
-        else if (getCluster(i).equals(getCluster(j))) {
-            return dsm.getMap()[i][j].longValue() * Math.pow(getClusterSize(getCluster(i)), lambda);
+        else if (clusters.getCluster(i) == clusters.getCluster(j)) {
+            return dsm.get(i, j).longValue() * Math.pow(clusters.getClusterSize(clusters.getCluster(i)), lambda);
         }
         //if i and j are not in same cluster
         else {
-            return dsm.getMap()[i][j].longValue() * Math.pow(dsm.getMap().length, lambda);
+            return dsm.get(i, j).longValue() * Math.pow(dsm.getSize(), lambda);
         }
     }
 
@@ -276,15 +1214,15 @@ public class ClusteredCost {
      * @return the rational
      */
     private Rational computeRelativeDependencyCost(int i, int j) {
-        long N = dsm.getMap().length;
-        long n = getClusterSize(getCluster(i));
-        long dsmValue = dsm.getMap()[i][j].longValue();
+        long N = dsm.getSize();
+        long n = clusters.getClusterSize(clusters.getCluster(i));
+        long dsmValue = dsm.get(i, j).longValue();
         // if j is a vertical bus
         if (isVerticalBus(j)) {
             return Rational.valueOf(dsmValue, (long) Math.pow(N, 4));
         }
         // if i and j are in same cluster
-        else if (getCluster(i).equals(getCluster(j))) {
+        else if (clusters.getCluster(i) == clusters.getCluster(j)) {
             return Rational.valueOf(dsmValue *
                     (long) Math.pow(n, 2), (long) Math.pow(N, 4));
         }
@@ -301,78 +1239,187 @@ public class ClusteredCost {
      * @return the double
      */
     private double computeRelativeClusteredCost() {
-        Rational cost = Rational.ZERO;
-        for (int i = 0; i < dsm.getMap().length; i++) {
-            for (int j = 0; j < dsm.getMap().length; j++) {
-                if (i != j) {
-                    cost = cost.plus(computeRelativeDependencyCost(i, j));
+        final Rational[] cost = {Rational.ZERO};
+        for (int i = 0; i < dsm.getSize(); i++) {
+            final int row = i;
+            dsm.forEachDependencyInRow(row, column -> {
+                if (row != column) {
+                    cost[0] = cost[0].plus(computeRelativeDependencyCost(row, column));
                 }
-            }
+            });
         }
-        logger.debug("Relative clustered cost: " + cost);
-        return cost.doubleValue();
+        logger.debug("Relative clustered cost: " + cost[0]);
+        return cost[0].doubleValue();
     }
 
 
     /**
-     * Compute marginal cost of change.
+     * Compute marginal cost of change. <br>
+     * <br>
+     * The element leaves a source cluster of m elements for a bidding cluster
+     * that will have n elements. Its links with the bidding cluster go from a
+     * cost of N^lambda to n^lambda each and its links with the source cluster
+     * from m^lambda to N^lambda, the other dependencies of the source cluster
+     * from m^lambda to (m - 1)^lambda and those of the bidding cluster from
+     * (n - 1)^lambda to n^lambda. The links are gathered by
+     * {@link #gatherLinks(int)} and the dependencies inside the clusters are
+     * kept in {@link #intraDependencies}, so each bid takes O(1) instead of
+     * rescanning both clusters.
      *
-     * @param position      the position
+     * @param position      the position, whose links are gathered
      * @param biddinCluster the biddin cluster
      * @return the long
      */
-    private long computeMarginalCostOfChange(int position, String biddinCluster) {
-        long totalChangeInCost = 0;
-        String sourceCluster = getCluster(position);
-        if (!sourceCluster.equals(biddinCluster)) {
-            int N = dsm.getMap().length;
-            int m = getClusterSize(sourceCluster);
-            int n = getClusterSize(biddinCluster) + 1;
-
-            for (int i = dsm.getClusterStartPositionMappings().get(biddinCluster); i <= dsm.getClusterEndPositionMappings().get(biddinCluster); i++) {
-                if (!isVerticalBus(i)) {
-                    totalChangeInCost += dsm.getMap()[i][position].longValue() * (-Math.pow(N, lambda) + Math.pow(n, lambda));
-                    totalChangeInCost += dsm.getMap()[position][i].longValue() * (-Math.pow(N, lambda) + Math.pow(n, lambda));
-                }
-            }
-            for (int i = dsm.getClusterStartPositionMappings().get(sourceCluster); i <= dsm.getClusterEndPositionMappings().get(sourceCluster); i++) {
-                if (!isVerticalBus(i)) {
-                    totalChangeInCost += dsm.getMap()[position][i].longValue() * (-Math.pow(m, lambda) + Math.pow(N, lambda));
-                    totalChangeInCost += dsm.getMap()[i][position].longValue() * (-Math.pow(m, lambda) + Math.pow(N, lambda));
-                }
+    private long computeMarginalCostOfChange(int position, int biddinCluster) {
+        int sourceCluster = clusterOf[elementAt[position]];
+        if (sourceCluster == biddinCluster) {
+            return 0;
+        }
+        long N = power(dsm.getSize());
+        long m = clusterSizes[sourceCluster];
+        long n = clusterSizes[biddinCluster] + 1;
+        long biddinLinks = outLinks[biddinCluster] + inLinks[biddinCluster];
+        long sourceLinks = outLinks[sourceCluster] + inLinks[sourceCluster];
+        long sourceDependencies = intraDependencies[sourceCluster] - ownIntraDependencies;
+        return biddinLinks * (power(n) - N)
+                + sourceLinks * (N - power(m))
+                + sourceDependencies * (power(m - 1) - power(m))
+                + intraDependencies[biddinCluster] * (power(n) - power(n - 1));
+    }
+
+    /**
+     * Computes the change in the clustered cost of moving the element bidden
+     * for, which is not a vertical bus, to another cluster. Unlike
+     * {@link #computeMarginalCostOfChange(int, int)}, whose bids are kept as
+     * they are, it follows {@link #computeDependencyCost(int, int)} exactly:
+     * the dependencies of elements on themselves cost nothing, and the
+     * dependencies of vertical busses on the element cost as much as the
+     * other ones.
+     *
+     * @param element       the element, whose links are gathered
+     * @param targetCluster the target cluster
+     * @return the change in cost
+     */
+    private long computeChangeInCost(int element, int targetCluster) {
+        int sourceCluster = clusterOf[element];
+        if (sourceCluster == targetCluster) {
+            return 0;
+        }
+        long N = power(dsm.getSize());
+        long m = clusterSizes[sourceCluster];
+        long n = clusterSizes[targetCluster] + 1;
+        long targetLinks = outLinks[targetCluster] + allInLinks[targetCluster];
+        long sourceLinks = outLinks[sourceCluster] + allInLinks[sourceCluster] - 2 * ownDependency;
+        long sourceDependencies = intraDependencies[sourceCluster] - selfDependencies[sourceCluster] - sourceLinks;
+        long targetDependencies = intraDependencies[targetCluster] - selfDependencies[targetCluster];
+        return targetLinks * (power(n) - N)
+                + sourceLinks * (N - power(m))
+                + sourceDependencies * (power(m - 1) - power(m))
+                + targetDependencies * (power(n) - power(n - 1));
+    }
+
+    /**
+     * Raises a cluster size to the power lambda.
+     *
+     * @param size the size
+     * @return size^lambda
+     */
+    private long power(long size) {
+        return (long) Math.pow(size, lambda);
+    }
+
+    /**
+     * Counts the links of the element at a position with each cluster,
+     * visiting only its dependencies and dependents.
+     *
+     * @param position the position
+     */
+    private void gatherLinks(int position) {
+        for (int k = 0; k < linkedCount; k++) {
+            int cluster = linkedClusters[k];
+            outLinks[cluster] = inLinks[cluster] = allInLinks[cluster] = 0;
+            linked[cluster] = false;
+        }
+        linkedCount = 0;
+        ownDependency = 0;
+        int element = elementAt[position];
+        for (int k = outOffsets[element]; k < outOffsets[element + 1]; k++) {
+            int dependable = outTargets[k];
+            int cluster = link(dependable);
+            if (!verticalBus[dependable]) {
+                outLinks[cluster]++;
             }
-            for (int i = dsm.getClusterStartPositionMappings().get(sourceCluster); i <= dsm.getClusterEndPositionMappings().get(sourceCluster); i++) {
-                for (int j = dsm.getClusterStartPositionMappings().get(sourceCluster); j <= dsm.getClusterEndPositionMappings().get(sourceCluster); j++) {
-                    if (i != position && j != position && !isVerticalBus(j)) {
-                        totalChangeInCost += dsm.getMap()[i][j].longValue() * (-Math.pow(m, lambda) + Math.pow(m - 1, lambda));
-                    }
-                }
+            if (dependable == element) {
+                ownDependency++;
             }
-            for (int i = dsm.getClusterStartPositionMappings().get(biddinCluster); i <= dsm.getClusterEndPositionMappings().get(biddinCluster); i++) {
-                for (int j = dsm.getClusterStartPositionMappings().get(biddinCluster); j <= dsm.getClusterEndPositionMappings().get(biddinCluster); j++) {
-                    if (i != position && j != position && !isVerticalBus(j)) {
-                        totalChangeInCost += dsm.getMap()[i][j].longValue() * (-Math.pow(n - 1, lambda) + Math.pow(n, lambda));
-                    }
-                }
+        }
+        for (int k = inOffsets[element]; k < inOffsets[element + 1]; k++) {
+            int dependent = inSources[k];
+            int cluster = link(dependent);
+            if (!verticalBus[dependent]) {
+                inLinks[cluster]++;
             }
+            allInLinks[cluster]++;
+        }
+        int sourceCluster = clusterOf[element];
+        ownIntraDependencies = outLinks[sourceCluster]
+                + (verticalBus[element] ? 0 : allInLinks[sourceCluster] - ownDependency);
+    }
+
+    /**
+     * Marks the cluster of an element as linked with the element bidden for.
+     *
+     * @param element the element
+     * @return the cluster of the element
+     */
+    private int link(int element) {
+        int cluster = clusterOf[element];
+        if (!linked[cluster]) {
+            linked[cluster] = true;
+            linkedClusters[linkedCount++] = cluster;
         }
-        return totalChangeInCost;
+        return cluster;
     }
 
     /**
-     * Compute winnig cluster.
+     * Compute winnig cluster. <br>
+     * <br>
+     * Only the clusters containing a dependency or a dependent of the element
+     * are bidden individually; they are found by {@link #gatherLinks(int)}.
+     * Moving the element to any other cluster costs the same change in its
+     * source cluster, plus the growth of the dependencies inside the bidding
+     * cluster, which is never negative. The best of those clusters is thus the
+     * first one in the bidding order without dependencies inside, found in
+     * {@link #independentClusters}, and the other ones are only bidden when
+     * all the clusters not linked with the element have dependencies inside.
+     * The winner is the same as when every cluster bids: the one lowering the
+     * cost the most, and the first one in the bidding order among equals.
      *
      * @param position the position
-     * @return the string
+     * @return the winning cluster, or -1 if no cluster lowers the cost
      */
-    private String computeWinnigCluster(int position) {
-        long maximumDecreaseInCost = 0;
-        String winnignCluster = null;
-        for (String clusterName : dsm.getClusterStartPositionMappings().keySet()) {
-            long marginalCostOfChange = computeMarginalCostOfChange(position, clusterName);
-            if (marginalCostOfChange < maximumDecreaseInCost) {
-                winnignCluster = clusterName;
-                maximumDecreaseInCost = marginalCostOfChange;
+    private int computeWinnigCluster(int position) {
+        gatherLinks(position);
+        int sourceCluster = clusterOf[elementAt[position]];
+        maximumDecreaseInCost = 0;
+        winnignCluster = -1;
+        for (int k = 0; k < linkedCount; k++) {
+            int cluster = linkedClusters[k];
+            if (cluster != sourceCluster) {
+                bid(position, cluster);
+            }
+        }
+        int rank = independentClusters.nextSetBit(0);
+        while (rank >= 0 && (linked[biddingOrder[rank]] || biddingOrder[rank] == sourceCluster)) {
+            rank = independentClusters.nextSetBit(rank + 1);
+        }
+        if (rank >= 0) {
+            bid(position, biddingOrder[rank]);
+        } else {
+            for (int cluster : biddingOrder) {
+                if (clusterSizes[cluster] > 0 && !linked[cluster] && cluster != sourceCluster) {
+                    bid(position, cluster);
+                }
             }
         }
         dependencyCostSum += maximumDecreaseInCost;
@@ -380,29 +1427,32 @@ public class ClusteredCost {
     }
 
     /**
-     * Gets the cluster.
+     * Lets a cluster bid for the element at a position, whose links are
+     * gathered. The cluster wins if it lowers the cost more than the winning
+     * cluster so far, or as much and comes first in the bidding order.
      *
      * @param position the position
-     * @return the cluster
+     * @param cluster  the bidding cluster
      */
-    private String getCluster(int position) {
-        for (String clusterName : dsm.getClusterStartPositionMappings().keySet()) {
-            if (isInCluster(position, clusterName)) {
-                return clusterName;
-            }
+    private void bid(int position, int cluster) {
+        long marginalCostOfChange = computeMarginalCostOfChange(position, cluster);
+        if (marginalCostOfChange < maximumDecreaseInCost
+                || (marginalCostOfChange == maximumDecreaseInCost && winnignCluster >= 0
+                && biddingRank[cluster] < biddingRank[winnignCluster])) {
+            winnignCluster = cluster;
+            maximumDecreaseInCost = marginalCostOfChange;
         }
-        return null;
     }
 
     /**
-     * Gets the cluster size.
+     * Records whether a cluster is removed or has dependencies inside, after
+     * it has changed.
      *
-     * @param clusterName the cluster name
-     * @return the cluster size
+     * @param cluster the cluster
      */
-    private int getClusterSize(String clusterName) {
-        return dsm.getClusterEndPositionMappings().get(clusterName) -
-                dsm.getClusterStartPositionMappings().get(clusterName) + 1;
+    private void updateIndependence(int cluster) {
+        independentClusters.set(biddingRank[cluster],
+                clusterSizes[cluster] > 0 && intraDependencies[cluster] == 0);
     }
 
     /**
@@ -411,23 +1461,94 @@ public class ClusteredCost {
     private void initClusters() {
         dsm.resetClusters();
         //initially each class is in its own cluster
-        for (int i = 0; i < dsm.getMap().length; i++) {
+        for (int i = 0; i < dsm.getSize(); i++) {
             String clusterName = "cluster_" + i;
             dsm.getClusterStartPositionMappings().put(clusterName, i);
             dsm.getClusterEndPositionMappings().put(clusterName, i);
         }
+        clusters = new ClusterIndex(dsm);
+        biddingOrder = new int[clusters.getClusterCount()];
+        biddingRank = new int[clusters.getIdCount()];
+        int k = 0;
+        for (String clusterName : dsm.getClusterStartPositionMappings().keySet()) {
+            biddingRank[clusters.getId(clusterName)] = k;
+            biddingOrder[k++] = clusters.getId(clusterName);
+        }
     }
 
     /**
-     * Checks if is in cluster.
-     *
-     * @param position    the position
-     * @param clusterName the cluster name
-     * @return true, if is in cluster
+     * Inits the bookkeeping of the links between the elements and the
+     * clusters, from the dependencies of the DSM and the clusters of
+     * {@link #initClusters()}.
      */
-    private boolean isInCluster(int position, String clusterName) {
-        return dsm.getClusterStartPositionMappings().get(clusterName) <= position &&
-                position <= dsm.getClusterEndPositionMappings().get(clusterName);
+    private void initBookkeeping() {
+        final int size = dsm.getSize();
+        elementAt = new int[size];
+        positionOf = new int[size];
+        rowOf = new int[size];
+        verticalBus = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            elementAt[i] = positionOf[i] = rowOf[i] = i;
+            verticalBus[i] = isVerticalBus(i);
+        }
+
+        outOffsets = new int[size + 1];
+        inOffsets = new int[size + 1];
+        for (int i = 0; i < size; i++) {
+            outOffsets[i + 1] = outOffsets[i] + dsm.getRowDegree(i);
+        }
+        final int[] targets = new int[outOffsets[size]];
+        final int[] next = Arrays.copyOf(outOffsets, size);
+        for (int i = 0; i < size; i++) {
+            final int row = i;
+            dsm.forEachDependencyInRow(row, column -> targets[next[row]++] = column);
+        }
+        outTargets = targets;
+        for (int dependable : outTargets) {
+            inOffsets[dependable + 1]++;
+        }
+        for (int i = 0; i < size; i++) {
+            inOffsets[i + 1] += inOffsets[i];
+        }
+        inSources = new int[outTargets.length];
+        System.arraycopy(inOffsets, 0, next, 0, size);
+        for (int i = 0; i < size; i++) {
+            for (int k = outOffsets[i]; k < outOffsets[i + 1]; k++) {
+                inSources[next[outTargets[k]]++] = i;
+            }
+        }
+
+        int idCount = clusters.getIdCount();
+        intraDependencies = new long[idCount];
+        selfDependencies = new long[idCount];
+        outLinks = new long[idCount];
+        inLinks = new long[idCount];
+        allInLinks = new long[idCount];
+        linked = new boolean[idCount];
+        linkedClusters = new int[idCount];
+        linkedCount = 0;
+        clusterOf = new int[size];
+        clusterSizes = new int[idCount];
+        for (int i = 0; i < size; i++) {
+            clusterOf[i] = clusters.getCluster(i);
+            clusterSizes[clusterOf[i]]++;
+        }
+        for (int i = 0; i < size; i++) {
+            int cluster = clusterOf[i];
+            for (int k = outOffsets[i]; k < outOffsets[i + 1]; k++) {
+                int dependable = outTargets[k];
+                if (!verticalBus[dependable] && clusterOf[dependable] == cluster) {
+                    intraDependencies[cluster]++;
+                    if (dependable == i) {
+                        selfDependencies[cluster]++;
+                    }
+                }
+            }
+        }
+        independentClusters = new BitSet(biddingOrder.length);
+        for (int cluster : biddingOrder) {
+            updateIndependence(cluster);
+        }
     }
 
     /**
@@ -437,62 +1558,80 @@ public class ClusteredCost {
      * @return true, if is vertical bus
      */
     private boolean isVerticalBus(int position) {
-        return verticalBusses.contains(dsm.getPositionNameMappings().get(position));
+        return verticalBusses.contains(dsm.getName(position));
     }
 
     /**
-     * Move to cluster.
+     * Reorders the DSM in a single pass so that each element is in the row and
+     * column of its position in the bookkeeping, instead of shifting it on
+     * every move, which takes O(N) swaps on the array based DSMs.
+     */
+    private void applyPositions() {
+        int size = dsm.getSize();
+        int[] order = new int[size];
+        boolean moved = false;
+        for (int position = 0; position < size; position++) {
+            order[position] = rowOf[elementAt[position]];
+            moved |= order[position] != position;
+        }
+        if (moved) {
+            dsm.applyPermutation(order);
+            for (int position = 0; position < size; position++) {
+                rowOf[elementAt[position]] = position;
+            }
+        }
+    }
+
+    /**
+     * Move to cluster. The links of the element must have been gathered by
+     * {@link #gatherLinks(int)}; they are used to update the dependencies
+     * inside the two clusters. The element is only moved in the bookkeeping;
+     * {@link #applyPositions()} moves it in the DSM.
      *
      * @param position      the position
      * @param targetCluster the target cluster
      */
-    private void moveToCluster(int position, String targetCluster) {
-        String sourceCluster = getCluster(position);
-        if (!sourceCluster.equals(targetCluster)) {
-
-            int sourceStart = dsm.getClusterStartPositionMappings().get(sourceCluster);
-            int targetStart = dsm.getClusterStartPositionMappings().get(targetCluster);
-            int sourceEnd = dsm.getClusterEndPositionMappings().get(sourceCluster);
-            int targetEnd = dsm.getClusterEndPositionMappings().get(targetCluster);
+    private void moveToCluster(int position, int targetCluster) {
+        int sourceCluster = clusters.getCluster(position);
+        if (sourceCluster != targetCluster) {
+            int element = elementAt[position];
+            moveElement(element, sourceCluster, targetCluster);
 
-
-            if (sourceStart < targetStart) {
-                updateClusterPositions(sourceEnd, targetStart, -1);
-                dsm.getClusterStartPositionMappings().put(targetCluster, targetStart - 1);
-                dsm.getClusterEndPositionMappings().put(sourceCluster, sourceEnd - 1);
+            int to = clusters.moveToCluster(position, targetCluster);
+            if (position < to) {
+                System.arraycopy(elementAt, position + 1, elementAt, position, to - position);
             } else {
-                updateClusterPositions(targetEnd, sourceStart, 1);
-                dsm.getClusterStartPositionMappings().put(sourceCluster, sourceStart + 1);
-                dsm.getClusterEndPositionMappings().put(targetCluster, targetEnd + 1);
+                System.arraycopy(elementAt, to, elementAt, to + 1, position - to);
             }
-
-            dsm.shift(position, dsm.getClusterEndPositionMappings().get(targetCluster));
-
-            if (getClusterSize(sourceCluster) == 0) {
-                dsm.getClusterStartPositionMappings().remove(sourceCluster);
-                dsm.getClusterEndPositionMappings().remove(sourceCluster);
+            elementAt[to] = element;
+            for (int i = Math.min(position, to); i <= Math.max(position, to); i++) {
+                positionOf[elementAt[i]] = i;
             }
         }
     }
 
     /**
-     * Update cluster positions.
+     * Moves an element to another cluster in the bookkeeping only, without
+     * changing its position. Its links must have been gathered by
+     * {@link #gatherLinks(int)}.
      *
-     * @param startIndex the start index
-     * @param endIndex   the end index
-     * @param offset     the offset
+     * @param element       the element
+     * @param sourceCluster the cluster of the element
+     * @param targetCluster the target cluster
      */
-    private void updateClusterPositions(int startIndex, int endIndex, int offset) {
-        for (String clusterName : dsm.getClusterStartPositionMappings().keySet()) {
-            int startPosition = dsm.getClusterStartPositionMappings().get(clusterName);
-            if (startPosition > startIndex && startPosition < endIndex) {
-                dsm.getClusterStartPositionMappings().put(clusterName, startPosition + offset);
-            }
-            int endPosition = dsm.getClusterEndPositionMappings().get(clusterName);
-            if (endPosition > startIndex && endPosition < endIndex) {
-                dsm.getClusterEndPositionMappings().put(clusterName, endPosition + offset);
-            }
+    private void moveElement(int element, int sourceCluster, int targetCluster) {
+        intraDependencies[sourceCluster] -= ownIntraDependencies;
+        intraDependencies[targetCluster] += outLinks[targetCluster]
+                + (verticalBus[element] ? 0 : allInLinks[targetCluster] + ownDependency);
+        if (!verticalBus[element]) {
+            selfDependencies[sourceCluster] -= ownDependency;
+            selfDependencies[targetCluster] += ownDependency;
         }
+        clusterOf[element] = targetCluster;
+        clusterSizes[sourceCluster]--;
+        clusterSizes[targetCluster]++;
+        updateIndependence(sourceCluster);
+        updateIndependence(targetCluster);
     }
 
     /**
@@ -577,4 +1716,195 @@ public class ClusteredCost {
             return relativeClusteredCost;
         }
     }
+
+    /**
+     * The results of several clustering runs from different seeds.
+     */
+    public static class MultiStartResult {
+
+        /**
+         * The result of each run.
+         */
+        private ClusteredCostResult[] results;
+
+        /**
+         * The index of the run with the lowest cost.
+         */
+        private int bestRun;
+
+        /**
+         * The seed of each run.
+         */
+        private long[] seeds;
+
+        /**
+         * The running time of each run, in nanoseconds.
+         */
+        private long[] runningTimes;
+
+        /**
+         * Instantiates a new multi start result.
+         *
+         * @param results      the result of each run
+         * @param bestRun      the index of the run with the lowest cost
+         * @param seeds        the seed of each run
+         * @param runningTimes the running time of each run, in nanoseconds
+         */
+        public MultiStartResult(ClusteredCostResult[] results, int bestRun, long[] seeds, long[] runningTimes) {
+            this.results = results;
+            this.bestRun = bestRun;
+            this.seeds = seeds;
+            this.runningTimes = runningTimes;
+        }
+
+        /**
+         * Gets the result with the lowest clustered cost.
+         *
+         * @return the best result
+         */
+        public ClusteredCostResult getBestResult() {
+            return results[bestRun];
+        }
+
+        /**
+         * Gets the index of the run with the lowest clustered cost.
+         *
+         * @return the best run
+         */
+        public int getBestRun() {
+            return bestRun;
+        }
+
+        /**
+         * Gets the seed of the run with the lowest clustered cost.
+         *
+         * @return the seed reproducing the best result
+         */
+        public long getBestSeed() {
+            return seeds[bestRun];
+        }
+
+        /**
+         * Gets the number of runs.
+         *
+         * @return the number of runs
+         */
+        public int getRunCount() {
+            return results.length;
+        }
+
+        /**
+         * Gets the result of a run.
+         *
+         * @param run the index of the run
+         * @return the result
+         */
+        public ClusteredCostResult getResult(int run) {
+            return results[run];
+        }
+
+        /**
+         * Gets the seed of a run.
+         *
+         * @param run the index of the run
+         * @return the seed
+         */
+        public long getSeed(int run) {
+            return seeds[run];
+        }
+
+        /**
+         * Gets the clustered cost of a run.
+         *
+         * @param run the index of the run
+         * @return the clustered cost
+         */
+        public long getClusteredCost(int run) {
+            return results[run].getClusteredCost();
+        }
+
+        /**
+         * Gets the number of clusters found by a run.
+         *
+         * @param run the index of the run
+         * @return the cluster count
+         */
+        public int getClusterCount(int run) {
+            return results[run].getDsm().getClusterStartPositionMappings().size();
+        }
+
+        /**
+         * Gets the running time of a run.
+         *
+         * @param run the index of the run
+         * @return the running time, in nanoseconds
+         */
+        public long getRunningTime(int run) {
+            return runningTimes[run];
+        }
+
+        /**
+         * Gets the mean clustered cost of the runs.
+         *
+         * @return the mean clustered cost
+         */
+        public double getMeanClusteredCost() {
+            double sum = 0;
+            for (ClusteredCostResult result : results) {
+                sum += result.getClusteredCost();
+            }
+            return sum / results.length;
+        }
+    }
+
+    /**
+     * The monitor of one of several concurrent runs, or of a step of a
+     * computation, which stops when the monitor of the whole computation stops
+     * or at its own deadline, and keeps its progress to itself.
+     */
+    private static class RunMonitor extends ProgressMonitor {
+
+        /**
+         * The monitor of the whole computation.
+         */
+        private ProgressMonitor parent;
+
+        /**
+         * Instantiates a new run monitor.
+         *
+         * @param parent the monitor of the whole computation
+         */
+        public RunMonitor(ProgressMonitor parent) {
+            this.parent = parent;
+        }
+
+        /* (non-Javadoc)
+         * @see edu.carleton.tim.jdsm.ProgressMonitor#isStopped()
+         */
+        @Override
+        public boolean isStopped() {
+            return parent.isStopped() || isDeadlineExceeded();
+        }
+
+        /* (non-Javadoc)
+         * @see edu.carleton.tim.jdsm.ProgressMonitor#begin(java.lang.String, long)
+         */
+        @Override
+        public void begin(String task, long total) {
+        }
+
+        /* (non-Javadoc)
+         * @see edu.carleton.tim.jdsm.ProgressMonitor#worked(long)
+         */
+        @Override
+        public void worked(long units) {
+        }
+
+        /* (non-Javadoc)
+         * @see edu.carleton.tim.jdsm.ProgressMonitor#setDone(long)
+         */
+        @Override
+        public void setDone(long units) {
+        }
+    }
 }
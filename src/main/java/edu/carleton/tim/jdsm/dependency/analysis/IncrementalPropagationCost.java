@@ -0,0 +1,432 @@
+/*
+Copyright (c) 2008, Roberto Milev
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or 
+without modification, are permitted provided that the following 
+conditions are met:
+
+    * Redistributions of source code must retain the above 
+      copyright notice, this list of conditions and the following 
+      disclaimer.
+    * Redistributions in binary form must reproduce the above 
+      copyright notice, this list of conditions and the following 
+      disclaimer in the documentation and/or other materials 
+      provided with the distribution.
+    * Neither the name of the Carleton University nor the names 
+      of its contributors may be used to endorse or promote 
+      products derived from this software without specific prior 
+      written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR 
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF 
+ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+*/
+package edu.carleton.tim.jdsm.dependency.analysis;
+
+import edu.carleton.tim.jdsm.DesignStructureMatrix;
+import edu.carleton.tim.jdsm.dependency.Dependency;
+import org.apache.log4j.Logger;
+import org.jscience.mathematics.number.Rational;
+
+
+/**
+ * Keeps the propagation cost of a DSM up to date while dependencies are added
+ * and removed, without computing it again from scratch. <br>
+ * <br>
+ * The tracker keeps the transitive closure of the dependencies both as rows
+ * (the elements each element reaches) and as columns (the elements reaching
+ * each element), as packed bit sets, together with the number of reachable
+ * pairs. When a dependency from i to j is added, only the elements that
+ * reach i can reach more elements, and each of them gets the elements
+ * reached by j with a few word-wide ORs. When a dependency is removed, only
+ * the elements that reached i can lose reachable elements: the closure of i
+ * is computed again first, and if it did not change nothing else did;
+ * otherwise the closures of all the elements reaching i are computed again
+ * over the strongly connected components of that region, reusing the
+ * closures of the elements outside the region as they are. <br>
+ * <br>
+ * The positions are those of the DSM given to the constructor; the tracker
+ * keeps its own copy of the dependencies and does not follow the DSM. It uses
+ * three N x N bit matrices, so it is meant for the DSM of a project being
+ * edited rather than for the largest code bases.
+ */
+public class IncrementalPropagationCost {
+
+    /**
+     * The logger.
+     */
+    private static Logger logger = Logger.getLogger(IncrementalPropagationCost.class);
+
+    /**
+     * The number of elements.
+     */
+    protected int size;
+
+    /**
+     * The number of words of a row.
+     */
+    protected int words;
+
+    /**
+     * The dependencies, one bit per column.
+     */
+    protected long[][] dependencies;
+
+    /**
+     * The elements reached by each element, the element itself included.
+     */
+    protected long[][] reach;
+
+    /**
+     * The elements reaching each element, the element itself included.
+     */
+    protected long[][] reachedBy;
+
+    /**
+     * The number of pairs (i, j) such that j can be reached from i.
+     */
+    protected long reachablePairs;
+
+    /**
+     * Instantiates a new tracker with the dependencies of a DSM.
+     *
+     * @param dsm the DSM
+     */
+    public IncrementalPropagationCost(DesignStructureMatrix<Dependency> dsm) {
+        size = dsm.getSize();
+        words = (size + 63) >>> 6;
+        dependencies = new long[size][words];
+        for (int i = 0; i < size; i++) {
+            final long[] row = dependencies[i];
+            dsm.forEachDependencyInRow(i, j -> row[j >>> 6] |= 1L << j);
+        }
+
+        // the members of a component reach the same elements, and the
+        // components are numbered so that dependencies go to lower numbers
+        StronglyConnectedComponents components = new StronglyConnectedComponents(dsm);
+        long[][] componentReach = new long[components.getComponentCount()][];
+        reach = new long[size][];
+        for (int c = 0; c < componentReach.length; c++) {
+            long[] row = new long[words];
+            for (int m = 0; m < components.getComponentSize(c); m++) {
+                int member = components.getMember(c, m);
+                row[member >>> 6] |= 1L << member;
+            }
+            for (int k = 0; k < components.getSuccessorCount(c); k++) {
+                or(row, componentReach[components.getSuccessor(c, k)]);
+            }
+            componentReach[c] = row;
+            for (int m = 0; m < components.getComponentSize(c); m++) {
+                reach[components.getMember(c, m)] = row.clone();
+            }
+        }
+
+        reachedBy = new long[size][words];
+        reachablePairs = 0;
+        for (int i = 0; i < size; i++) {
+            long[] row = reach[i];
+            for (int w = 0; w < words; w++) {
+                long word = row[w];
+                reachablePairs += Long.bitCount(word);
+                while (word != 0) {
+                    int j = (w << 6) + Long.numberOfTrailingZeros(word);
+                    reachedBy[j][i >>> 6] |= 1L << i;
+                    word &= word - 1;
+                }
+            }
+        }
+        logger.info("Initial propagation cost: " + getPropagationCost());
+    }
+
+    /**
+     * Gets the number of elements.
+     *
+     * @return the number of elements
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Gets the number of pairs (i, j) such that j can be reached from i, i
+     * included.
+     *
+     * @return the number of reachable pairs
+     */
+    public long getReachablePairCount() {
+        return reachablePairs;
+    }
+
+    /**
+     * Gets the propagation cost, as computed by
+     * {@link PropagationCost#computePropagationCost(DesignStructureMatrix)}
+     * for the current dependencies.
+     *
+     * @return the propagation cost. A value between 0 and 1 indicating the
+     * impact in percents
+     */
+    public double getPropagationCost() {
+        return Rational.valueOf(reachablePairs, (long) size * size).doubleValue();
+    }
+
+    /**
+     * Checks if an element depends directly on another.
+     *
+     * @param row    the position of the element
+     * @param column the position of the other element
+     * @return true, if there is a dependency
+     */
+    public boolean hasDependency(int row, int column) {
+        return (dependencies[row][column >>> 6] & (1L << column)) != 0;
+    }
+
+    /**
+     * Checks if an element depends, directly or not, on another.
+     *
+     * @param row    the position of the element
+     * @param column the position of the other element
+     * @return true, if the other element can be reached from the element
+     */
+    public boolean isReachable(int row, int column) {
+        return (reach[row][column >>> 6] & (1L << column)) != 0;
+    }
+
+    /**
+     * Adds a dependency and updates the propagation cost. Only the elements
+     * reaching the row element are visited.
+     *
+     * @param row    the position of the element
+     * @param column the position of the element it depends on
+     * @return false, if the dependency already existed
+     */
+    public boolean addDependency(int row, int column) {
+        if (hasDependency(row, column)) {
+            return false;
+        }
+        dependencies[row][column >>> 6] |= 1L << column;
+        if (isReachable(row, column)) {
+            return true;
+        }
+        long[] added = reach[column];
+        long[] sources = reachedBy[row];
+        for (int w = 0; w < words; w++) {
+            long word = sources[w];
+            while (word != 0) {
+                int source = (w << 6) + Long.numberOfTrailingZeros(word);
+                long[] sourceReach = reach[source];
+                for (int v = 0; v < words; v++) {
+                    long missing = added[v] & ~sourceReach[v];
+                    if (missing != 0) {
+                        sourceReach[v] |= missing;
+                        reachablePairs += Long.bitCount(missing);
+                        setColumnBits(source, v, missing, true);
+                    }
+                }
+                word &= word - 1;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes a dependency and updates the propagation cost. Only the closures
+     * of the elements that reached the row element are computed again.
+     *
+     * @param row    the position of the element
+     * @param column the position of the element it depends on
+     * @return false, if there was no such dependency
+     */
+    public boolean removeDependency(int row, int column) {
+        if (!hasDependency(row, column)) {
+            return false;
+        }
+        dependencies[row][column >>> 6] &= ~(1L << column);
+        if (row == column) {
+            return true;
+        }
+
+        // only the elements that reached the row can lose reachable elements
+        long[] region = reachedBy[row].clone();
+        if (update(row, region) == 0) {
+            return true;
+        }
+        updateRegion(region);
+        return true;
+    }
+
+    /**
+     * Computes the closure of an element again and stores it. The elements
+     * outside the region do not reach the removed dependency, so their
+     * closures are still valid and are used as they are.
+     *
+     * @param source the element
+     * @param region the elements whose closure may have changed
+     * @return the number of elements the element does not reach any more
+     */
+    private long update(int source, long[] region) {
+        long[] visited = new long[words];
+        visited[source >>> 6] |= 1L << source;
+        int[] stack = new int[size];
+        int depth = 0;
+        stack[depth++] = source;
+        while (depth > 0) {
+            long[] row = dependencies[stack[--depth]];
+            for (int w = 0; w < words; w++) {
+                long word = row[w] & ~visited[w];
+                while (word != 0) {
+                    int element = (w << 6) + Long.numberOfTrailingZeros(word);
+                    if ((visited[w] & (1L << element)) == 0) {
+                        if ((region[w] & (1L << element)) != 0) {
+                            visited[w] |= 1L << element;
+                            stack[depth++] = element;
+                        } else {
+                            or(visited, reach[element]);
+                        }
+                    }
+                    word &= word - 1;
+                }
+            }
+        }
+        return store(source, visited);
+    }
+
+    /**
+     * Computes the closures of all the elements of a region again. The
+     * dependencies inside the region are condensed to their strongly
+     * connected components, so that each cycle of the region is handled once,
+     * and the components are handled from the last reached to the first.
+     *
+     * @param region the elements whose closure may have changed
+     */
+    private void updateRegion(long[] region) {
+        int count = 0;
+        for (long word : region) {
+            count += Long.bitCount(word);
+        }
+        int[] elements = new int[count];
+        int[] local = new int[size];
+        count = 0;
+        for (int w = 0; w < words; w++) {
+            long word = region[w];
+            while (word != 0) {
+                int element = (w << 6) + Long.numberOfTrailingZeros(word);
+                local[element] = count;
+                elements[count++] = element;
+                word &= word - 1;
+            }
+        }
+
+        int[] offsets = new int[count + 1];
+        for (int i = 0; i < count; i++) {
+            long[] row = dependencies[elements[i]];
+            int degree = 0;
+            for (int w = 0; w < words; w++) {
+                degree += Long.bitCount(row[w] & region[w]);
+            }
+            offsets[i + 1] = offsets[i] + degree;
+        }
+        int[] targets = new int[offsets[count]];
+        for (int i = 0, k = 0; i < count; i++) {
+            long[] row = dependencies[elements[i]];
+            for (int w = 0; w < words; w++) {
+                long word = row[w] & region[w];
+                while (word != 0) {
+                    targets[k++] = local[(w << 6) + Long.numberOfTrailingZeros(word)];
+                    word &= word - 1;
+                }
+            }
+        }
+
+        StronglyConnectedComponents components = new StronglyConnectedComponents(count, offsets, targets);
+        long[][] componentReach = new long[components.getComponentCount()][];
+        for (int c = 0; c < componentReach.length; c++) {
+            long[] closure = new long[words];
+            for (int m = 0; m < components.getComponentSize(c); m++) {
+                int element = elements[components.getMember(c, m)];
+                closure[element >>> 6] |= 1L << element;
+                long[] row = dependencies[element];
+                for (int w = 0; w < words; w++) {
+                    long word = row[w] & ~region[w];
+                    while (word != 0) {
+                        or(closure, reach[(w << 6) + Long.numberOfTrailingZeros(word)]);
+                        word &= word - 1;
+                    }
+                }
+            }
+            for (int k = 0; k < components.getSuccessorCount(c); k++) {
+                or(closure, componentReach[components.getSuccessor(c, k)]);
+            }
+            componentReach[c] = closure;
+        }
+        for (int i = 0; i < count; i++) {
+            store(elements[i], componentReach[components.getComponent(i)]);
+        }
+    }
+
+    /**
+     * Replaces the closure of an element by a smaller one.
+     *
+     * @param source  the element
+     * @param closure the new closure
+     * @return the number of elements the element does not reach any more
+     */
+    private long store(int source, long[] closure) {
+        long[] sourceReach = reach[source];
+        long removed = 0;
+        for (int w = 0; w < words; w++) {
+            long lost = sourceReach[w] & ~closure[w];
+            if (lost != 0) {
+                sourceReach[w] &= ~lost;
+                removed += Long.bitCount(lost);
+                setColumnBits(source, w, lost, false);
+            }
+        }
+        reachablePairs -= removed;
+        return removed;
+    }
+
+    /**
+     * Sets or clears the bit of an element in the columns of some elements.
+     *
+     * @param source  the element
+     * @param w       the word of the columns
+     * @param columns the columns in that word
+     * @param value   true to set the bits, false to clear them
+     */
+    private void setColumnBits(int source, int w, long columns, boolean value) {
+        long bit = 1L << source;
+        int word = source >>> 6;
+        while (columns != 0) {
+            long[] column = reachedBy[(w << 6) + Long.numberOfTrailingZeros(columns)];
+            if (value) {
+                column[word] |= bit;
+            } else {
+                column[word] &= ~bit;
+            }
+            columns &= columns - 1;
+        }
+    }
+
+    /**
+     * Adds the bits of a row to another.
+     *
+     * @param target the row to add to
+     * @param bits   the bits to add
+     */
+    private static void or(long[] target, long[] bits) {
+        for (int w = 0; w < target.length; w++) {
+            target[w] |= bits[w];
+        }
+    }
+}
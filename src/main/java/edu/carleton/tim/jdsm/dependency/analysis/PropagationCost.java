@@ -35,11 +35,23 @@ ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package edu.carleton.tim.jdsm.dependency.analysis;
 
 import edu.carleton.tim.jdsm.DesignStructureMatrix;
+import edu.carleton.tim.jdsm.ProgressMonitor;
 import edu.carleton.tim.jdsm.dependency.Dependency;
+import edu.carleton.tim.jdsm.dependency.PackedDependencyDSM;
 import org.apache.log4j.Logger;
 import org.jscience.mathematics.number.Rational;
-import org.jscience.mathematics.vector.DenseMatrix;
-import org.jscience.mathematics.vector.Matrix;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 
 /**
@@ -56,60 +68,845 @@ public class PropagationCost {
     private static Logger logger = Logger.getLogger(PropagationCost.class);
 
     /**
-     * Compute propagation cost.
+     * Compute propagation cost. <br>
+     * <br>
+     * The propagation cost is the number of pairs (i, j) such that j can be
+     * reached from i, i included, divided by N * N. The DSM is first condensed
+     * to its {@link StronglyConnectedComponents}, so that the elements of a
+     * cyclic core are handled once; see
+     * {@link #computePropagationCost(StronglyConnectedComponents)}.
      *
      * @param dsm the DSM to be analyzed
      * @return the propagation cost. A value between 0 and 1 indicating the
      * impact in percents
      */
     public static double computePropagationCost(DesignStructureMatrix<Dependency> dsm) {
-        DesignStructureMatrix<Dependency> dsmCopy = dsm.clone();
+        return computePropagationCost(new StronglyConnectedComponents(dsm));
+    }
+
+    /**
+     * Compute propagation cost, stopping early if the monitor asks to.
+     *
+     * @param dsm     the DSM to be analyzed
+     * @param monitor the monitor of the computation
+     * @return the propagation cost, or a lower bound of it if the monitor
+     * stopped the computation
+     * @see #computePropagationCost(StronglyConnectedComponents, ProgressMonitor)
+     */
+    public static double computePropagationCost(DesignStructureMatrix<Dependency> dsm, ProgressMonitor monitor) {
+        return computePropagationCost(new StronglyConnectedComponents(dsm), monitor);
+    }
+
+    /**
+     * Compute propagation cost from the strongly connected components of a
+     * DSM. <br>
+     * <br>
+     * All the members of a component reach the same elements, so reachability
+     * is computed between components. The components are taken 64 at a time:
+     * each component holds a word whose bit k is set when source k reaches it,
+     * and since dependencies always go to lower numbered components, a single
+     * pass from the highest source down to component 0 pushes the words along
+     * the condensed dependencies. Each reached component then adds its size
+     * times the total size of the sources that reach it, looked up a byte at a
+     * time. The whole computation takes O(C / 64 * (C + E)) time for C
+     * components and E dependencies between them, and O(C + E) memory.
+     *
+     * @param components the strongly connected components of the DSM
+     * @return the propagation cost. A value between 0 and 1 indicating the
+     * impact in percents
+     */
+    public static double computePropagationCost(StronglyConnectedComponents components) {
+        return computePropagationCost(components, new ProgressMonitor());
+    }
+
+    /**
+     * Compute propagation cost from the strongly connected components of a
+     * DSM, stopping early if the monitor asks to. The monitor is checked and
+     * told of the progress after each batch of 64 components. When it stops
+     * the computation, the pairs counted so far are used, so the result is a
+     * lower bound of the propagation cost.
+     *
+     * @param components the strongly connected components of the DSM
+     * @param monitor    the monitor of the computation
+     * @return the propagation cost, or a lower bound of it if the monitor
+     * stopped the computation
+     * @see #computePropagationCost(StronglyConnectedComponents)
+     */
+    public static double computePropagationCost(StronglyConnectedComponents components, ProgressMonitor monitor) {
         logger.info("Started computing propagation cost.");
-        final int mapSize = dsmCopy.getMap().length;
-        Matrix<Dependency> matrix = DenseMatrix.valueOf(dsmCopy.getMap());
-
-        Dependency[][] zeroDep = new Dependency[matrix.getNumberOfColumns()]
-                [matrix.getNumberOfRows()];
-        Dependency[][] singleDep = new Dependency[matrix.getNumberOfColumns()]
-                [matrix.getNumberOfRows()];
-
-        for (int i = 0; i < matrix.getNumberOfRows(); i++) {
-            for (int j = 0; j < matrix.getNumberOfRows(); j++) {
-                if (i == j) {
-                    singleDep[i][j] = Dependency.YES;
-                } else {
-                    singleDep[i][j] = Dependency.NO;
+        monitor.begin("Computing propagation cost", components.getComponentCount());
+        long totalDeps = countReachablePairs(components, 0, 1, monitor);
+        return toPropagationCost(components, totalDeps);
+    }
+
+    /**
+     * Computes the propagation cost of a DSM together with the visibility of
+     * each element, in the same pass. <br>
+     * <br>
+     * The visibility fan-in of an element is the number of elements that
+     * depend on it, directly or not, and its visibility fan-out the number of
+     * elements it depends on, directly or not; both include the element
+     * itself, as the propagation cost does. The elements with the largest
+     * fan-in and fan-out are the hotspots a change spreads from and to.
+     *
+     * @param dsm the DSM to be analyzed
+     * @return the propagation cost and the visibility of each element
+     */
+    public static PropagationCostResult computeVisibility(DesignStructureMatrix<Dependency> dsm) {
+        return computeVisibility(dsm, new ProgressMonitor());
+    }
+
+    /**
+     * Computes the propagation cost of a DSM together with the visibility of
+     * each element, stopping early if the monitor asks to. When it stops the
+     * computation, only the elements of the components processed so far have
+     * their fan-out, and the fan-ins and the propagation cost only count
+     * these elements, so they are lower bounds.
+     *
+     * @param dsm     the DSM to be analyzed
+     * @param monitor the monitor of the computation
+     * @return the propagation cost and the visibility of each element
+     * @see #computeVisibility(DesignStructureMatrix)
+     */
+    public static PropagationCostResult computeVisibility(DesignStructureMatrix<Dependency> dsm,
+                                                          ProgressMonitor monitor) {
+        logger.info("Started computing propagation cost and visibility.");
+        StronglyConnectedComponents components = new StronglyConnectedComponents(dsm);
+        int componentCount = components.getComponentCount();
+        long[] componentFanIn = new long[componentCount];
+        long[] componentFanOut = new long[componentCount];
+        monitor.begin("Computing propagation cost and visibility", componentCount);
+        long totalDeps = countReachablePairs(components, 0, 1, componentFanIn, componentFanOut, monitor);
+
+        int mapSize = components.getSize();
+        int[] fanIn = new int[mapSize];
+        int[] fanOut = new int[mapSize];
+        for (int i = 0; i < mapSize; i++) {
+            fanIn[i] = (int) componentFanIn[components.getComponent(i)];
+            fanOut[i] = (int) componentFanOut[components.getComponent(i)];
+        }
+        double propagationCost = toPropagationCost(components, totalDeps);
+        return new PropagationCostResult(propagationCost, totalDeps, fanIn, fanOut,
+                new HashMap<Integer, String>(dsm.getPositionNameMappings()));
+    }
+
+    /**
+     * Computes the visibility of each element within a number of hops, and
+     * the propagation cost it gives. <br>
+     * <br>
+     * An element reaches another within k hops when there is a path of at
+     * most k dependencies between them, and every element reaches itself, as
+     * in {@link #computeVisibility(DesignStructureMatrix)}, which is the limit
+     * when k is N - 1 or more. The reached elements are the rows of
+     * (I + D)<sup>k</sup>, computed for 64 sources at a time: each element
+     * holds a word whose bit s is set when source s reaches it, and each hop
+     * is the product of this 64-row slab with D, pushing the words of the
+     * elements reached by the last hop along their dependencies. Only the
+     * reached elements are visited, so a batch costs O(k * E') for the E'
+     * dependencies of the elements it reaches, which for the first few hops is
+     * a fraction of the full closure. A batch stops as soon as a hop reaches
+     * no new element.
+     *
+     * @param dsm     the DSM to be analyzed
+     * @param maxHops the largest number of dependencies on a path, at least 1
+     * @return the k-hop propagation cost and the k-hop visibility of each
+     * element
+     * @see PackedDependencyDSM#power(int)
+     */
+    public static PropagationCostResult computeVisibility(DesignStructureMatrix<Dependency> dsm, int maxHops) {
+        if (maxHops < 1) {
+            throw new IllegalArgumentException("The number of hops must be at least 1: " + maxHops);
+        }
+        logger.info("Started computing visibility within " + maxHops + " hops.");
+        final int mapSize = dsm.getSize();
+
+        // the dependencies of each position, in compressed rows
+        final int[] offsets = new int[mapSize + 1];
+        for (int i = 0; i < mapSize; i++) {
+            offsets[i + 1] = offsets[i] + dsm.getRowDegree(i);
+        }
+        final int[] targets = new int[offsets[mapSize]];
+        final int[] next = Arrays.copyOf(offsets, mapSize);
+        for (int i = 0; i < mapSize; i++) {
+            final int row = i;
+            dsm.forEachDependencyInRow(row, column -> targets[next[row]++] = column);
+        }
+
+        long[] reached = new long[mapSize];
+        long[] frontier = new long[mapSize];
+        long[] added = new long[mapSize];
+        int[] current = new int[mapSize];
+        int[] upcoming = new int[mapSize];
+        int[] touched = new int[mapSize];
+        int[] fanIn = new int[mapSize];
+        int[] fanOut = new int[mapSize];
+        long totalDeps = 0;
+        for (int first = 0; first < mapSize; first += 64) {
+            int last = Math.min(first + 64, mapSize);
+            int currentCount = 0;
+            int touchedCount = 0;
+            for (int source = first; source < last; source++) {
+                reached[source] = frontier[source] = 1L << (source - first);
+                current[currentCount++] = source;
+                touched[touchedCount++] = source;
+            }
+            for (int hop = 1; hop <= maxHops && currentCount > 0; hop++) {
+                int upcomingCount = 0;
+                for (int c = 0; c < currentCount; c++) {
+                    int element = current[c];
+                    long sources = frontier[element];
+                    frontier[element] = 0L;
+                    for (int k = offsets[element]; k < offsets[element + 1]; k++) {
+                        int dependable = targets[k];
+                        long missing = sources & ~reached[dependable];
+                        if (missing != 0) {
+                            if (added[dependable] == 0) {
+                                upcoming[upcomingCount++] = dependable;
+                            }
+                            added[dependable] |= missing;
+                        }
+                    }
+                }
+                currentCount = 0;
+                for (int u = 0; u < upcomingCount; u++) {
+                    int element = upcoming[u];
+                    if (reached[element] == 0) {
+                        touched[touchedCount++] = element;
+                    }
+                    reached[element] |= added[element];
+                    frontier[element] = added[element];
+                    added[element] = 0L;
+                    current[currentCount++] = element;
+                }
+            }
+            for (int t = 0; t < touchedCount; t++) {
+                int element = touched[t];
+                long sources = reached[element];
+                fanIn[element] += Long.bitCount(sources);
+                totalDeps += Long.bitCount(sources);
+                while (sources != 0) {
+                    fanOut[first + Long.numberOfTrailingZeros(sources)]++;
+                    sources &= sources - 1;
                 }
-                zeroDep[i][j] = Dependency.NO;
+                reached[element] = 0L;
+                frontier[element] = 0L;
+            }
+        }
+        double propagationCost = Rational.valueOf(totalDeps, (long) mapSize * mapSize).doubleValue();
+        logger.info("Computed propagation cost within " + maxHops + " hops: " + propagationCost);
+        return new PropagationCostResult(propagationCost, totalDeps, fanIn, fanOut,
+                new HashMap<Integer, String>(dsm.getPositionNameMappings()));
+    }
+
+    /**
+     * Compute propagation cost on several threads.
+     *
+     * @param dsm         the DSM to be analyzed
+     * @param parallelism the number of threads to use
+     * @return the propagation cost. A value between 0 and 1 indicating the
+     * impact in percents
+     * @throws InterruptedException if the thread is interrupted while waiting
+     *                              for the result
+     * @see #computePropagationCost(StronglyConnectedComponents, ExecutorService, int)
+     */
+    public static double computePropagationCost(DesignStructureMatrix<Dependency> dsm, int parallelism)
+            throws InterruptedException {
+        StronglyConnectedComponents components = new StronglyConnectedComponents(dsm);
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return computePropagationCost(components, pool, parallelism);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Compute propagation cost on the threads of an executor. <br>
+     * <br>
+     * The batches of 64 source components of
+     * {@link #computePropagationCost(StronglyConnectedComponents)} are
+     * independent, so they are dealt to the tasks in turn, which also spreads
+     * the expensive batches of high numbered components. Each task has its own
+     * words and lookup tables, and the counts of the tasks are added in task
+     * order, so the result is the same as on a single thread.
+     *
+     * @param components  the strongly connected components of the DSM
+     * @param executor    the executor running the tasks
+     * @param parallelism the number of tasks
+     * @return the propagation cost. A value between 0 and 1 indicating the
+     * impact in percents
+     * @throws InterruptedException if the thread is interrupted while waiting
+     *                              for the result
+     */
+    public static double computePropagationCost(StronglyConnectedComponents components,
+                                                ExecutorService executor, int parallelism)
+            throws InterruptedException {
+        return computePropagationCost(components, executor, parallelism, new ProgressMonitor());
+    }
 
+    /**
+     * Compute propagation cost on the threads of an executor, stopping early
+     * if the monitor asks to. Each task checks the monitor after each of its
+     * batches; when it stops the computation, the result is a lower bound of
+     * the propagation cost.
+     *
+     * @param components  the strongly connected components of the DSM
+     * @param executor    the executor running the tasks
+     * @param parallelism the number of tasks
+     * @param monitor     the monitor of the computation
+     * @return the propagation cost, or a lower bound of it if the monitor
+     * stopped the computation
+     * @throws InterruptedException if the thread is interrupted while waiting
+     *                              for the result
+     * @see #computePropagationCost(StronglyConnectedComponents, ExecutorService, int)
+     */
+    public static double computePropagationCost(final StronglyConnectedComponents components,
+                                                ExecutorService executor, int parallelism,
+                                                final ProgressMonitor monitor)
+            throws InterruptedException {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be at least 1: " + parallelism);
+        }
+        logger.info("Started computing propagation cost with " + parallelism + " tasks.");
+        monitor.begin("Computing propagation cost", components.getComponentCount());
+        List<Callable<Long>> tasks = new ArrayList<Callable<Long>>();
+        for (int task = 0; task < parallelism; task++) {
+            final int firstBatch = task;
+            final int batchStep = parallelism;
+            tasks.add(() -> countReachablePairs(components, firstBatch, batchStep, monitor));
+        }
+        long totalDeps = 0;
+        for (Future<Long> result : executor.invokeAll(tasks)) {
+            try {
+                totalDeps += result.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw (RuntimeException) cause;
             }
         }
+        return toPropagationCost(components, totalDeps);
+    }
+
+    /**
+     * Estimates the propagation cost from a sample of source elements.
+     *
+     * @param dsm           the DSM to be analyzed
+     * @param relativeError the largest error wanted, relative to the estimate
+     * @param confidence    the probability that the propagation cost is within
+     *                      the bounds of the estimate, such as 0.95
+     * @param seed          the seed of the random sample
+     * @return the estimate
+     * @see #estimatePropagationCost(StronglyConnectedComponents, double, double, Random)
+     */
+    public static PropagationCostEstimate estimatePropagationCost(DesignStructureMatrix<Dependency> dsm,
+                                                                  double relativeError, double confidence,
+                                                                  long seed) {
+        return estimatePropagationCost(new StronglyConnectedComponents(dsm), relativeError, confidence,
+                new Random(seed));
+    }
 
-        Matrix<Dependency> zeroMatrix = DenseMatrix.valueOf(zeroDep);
-        Matrix<Dependency> sumMatrix = DenseMatrix.valueOf(singleDep);
-        Matrix<Dependency> powerMatrix = DenseMatrix.valueOf(singleDep);
+    /**
+     * Estimates the propagation cost from a sample of source elements. <br>
+     * <br>
+     * The propagation cost is the mean number of elements reached by an
+     * element, divided by N. Source elements are drawn uniformly, with
+     * replacement, and the elements they reach are counted with a walk over
+     * the condensed DSM; the count of a component is kept, so a large cyclic
+     * core is walked only once. <br>
+     * <br>
+     * The counts are between 1 and N, and the error bound is the empirical
+     * Bernstein bound of Maurer and Pontil for such values, which holds
+     * whatever their distribution. Unlike the normal approximation, it does
+     * not trust a sample in which most elements reach almost nothing, as the
+     * leaves of a DSM with a small core, while the few elements that reach a
+     * lot have not been drawn yet: a sample without variance still has an
+     * error bound of about 2.3 N log(4 / (1 - confidence)) / samples. The
+     * bound is checked after 100 sources, and then each time the sample has
+     * doubled; the k-th check uses a confidence of 1 - (1 - confidence) / ((k
+     * + 1) (k + 2)), so that the bound of the estimate returned holds with the
+     * given confidence in spite of the repeated checks. Sampling stops as soon
+     * as the bound is at most <code>relativeError</code> times the mean. When
+     * the sample would have to be so large that it costs as much as the exact
+     * computation, that is about one source for every 64 components, the
+     * exact propagation cost is returned instead, with an error bound of zero;
+     * an estimate that is not exact never has an error bound of zero.
+     *
+     * @param components    the strongly connected components of the DSM
+     * @param relativeError the largest error wanted, relative to the estimate
+     * @param confidence    the probability that the propagation cost is within
+     *                      the bounds of the estimate, such as 0.95
+     * @param random        the source of the random sample
+     * @return the estimate
+     */
+    public static PropagationCostEstimate estimatePropagationCost(StronglyConnectedComponents components,
+                                                                  double relativeError, double confidence,
+                                                                  Random random) {
+        if (!(relativeError > 0)) {
+            throw new IllegalArgumentException("The relative error must be positive: " + relativeError);
+        }
+        if (!(confidence > 0 && confidence < 1)) {
+            throw new IllegalArgumentException("The confidence must be between 0 and 1: " + confidence);
+        }
+        logger.info("Started estimating propagation cost.");
+        final int mapSize = components.getSize();
+        final int componentCount = components.getComponentCount();
+        final int minimumSamples = 100;
+        final int maximumSamples = componentCount / 64;
+        if (maximumSamples <= minimumSamples) {
+            double propagationCost = computePropagationCost(components);
+            return new PropagationCostEstimate(propagationCost, 0, confidence, 0, true);
+        }
 
-        int counter = 0;
-        while (counter < mapSize && !powerMatrix.equals(zeroMatrix)) {
-            counter++;
-            if (counter % 50 == 0) {
-                logger.info("Processed " + counter + " of " + mapSize);
+        double range = mapSize - 1;
+        long[] reachedCounts = new long[componentCount];
+        int[] visited = new int[componentCount];
+        int[] stack = new int[componentCount];
+        double sum = 0;
+        double sumOfSquares = 0;
+        int samples = 0;
+        int nextCheck = minimumSamples;
+        int checks = 0;
+        while (true) {
+            int source = components.getComponent(random.nextInt(mapSize));
+            if (reachedCounts[source] == 0) {
+                reachedCounts[source] = countReachedElements(components, source, samples + 1, visited, stack);
+            }
+            double reached = reachedCounts[source];
+            sum += reached;
+            sumOfSquares += reached * reached;
+            samples++;
+            if (samples == nextCheck || samples >= maximumSamples) {
+                double mean = sum / samples;
+                double variance = Math.max(0, (sumOfSquares - sum * mean) / (samples - 1));
+                double log = Math.log(4 * (checks + 1.0) * (checks + 2.0) / (1 - confidence));
+                double halfWidth = Math.sqrt(2 * variance * log / samples) + 7 * range * log / (3 * (samples - 1));
+                checks++;
+                nextCheck = 2 * samples;
+                if (halfWidth <= relativeError * mean) {
+                    double propagationCost = mean / mapSize;
+                    double errorBound = halfWidth / mapSize;
+                    logger.info("Estimated propagation cost: " + propagationCost + " +/- " + errorBound
+                            + " from " + samples + " sources");
+                    return new PropagationCostEstimate(propagationCost, errorBound, confidence, samples, false);
+                }
+                if (samples >= maximumSamples) {
+                    logger.info("Sample too large, computing the exact propagation cost.");
+                    double propagationCost = computePropagationCost(components);
+                    return new PropagationCostEstimate(propagationCost, 0, confidence, samples, true);
+                }
             }
-            powerMatrix = powerMatrix.times(matrix);
-            sumMatrix = sumMatrix.plus(powerMatrix);
         }
+    }
+
+    /**
+     * Counts the elements reached by the members of a component, the members
+     * included.
+     *
+     * @param components the strongly connected components of the DSM
+     * @param source     the component
+     * @param mark       the mark of the components visited by this walk
+     * @param visited    the last mark of each component
+     * @param stack      a buffer for the components to visit
+     * @return the number of reached elements
+     */
+    private static long countReachedElements(StronglyConnectedComponents components, int source,
+                                             int mark, int[] visited, int[] stack) {
+        long reached = 0;
+        int depth = 0;
+        visited[source] = mark;
+        stack[depth++] = source;
+        while (depth > 0) {
+            int component = stack[--depth];
+            reached += components.getComponentSize(component);
+            for (int k = 0, count = components.getSuccessorCount(component); k < count; k++) {
+                int successor = components.getSuccessor(component, k);
+                if (visited[successor] != mark) {
+                    visited[successor] = mark;
+                    stack[depth++] = successor;
+                }
+            }
+        }
+        return reached;
+    }
+
+    /**
+     * Counts the pairs of elements (i, j) such that j can be reached from i,
+     * for the sources in some of the batches of 64 components.
+     *
+     * @param components the strongly connected components of the DSM
+     * @param firstBatch the first batch
+     * @param batchStep  the distance between two batches
+     * @param monitor    the monitor, checked after each batch
+     * @return the number of reachable pairs from the members of the sources
+     */
+    private static long countReachablePairs(StronglyConnectedComponents components,
+                                            int firstBatch, int batchStep, ProgressMonitor monitor) {
+        return countReachablePairs(components, firstBatch, batchStep, null, null, monitor);
+    }
 
+    /**
+     * Counts the pairs of elements (i, j) such that j can be reached from i,
+     * for the sources in some of the batches of 64 components, and optionally
+     * the elements reaching and reached by each component.
+     *
+     * @param components the strongly connected components of the DSM
+     * @param firstBatch the first batch
+     * @param batchStep  the distance between two batches
+     * @param fanIn      if not null, receives for each component the number of
+     *                   elements of the sources reaching it
+     * @param fanOut     if not null, receives for each source the number of
+     *                   elements it reaches
+     * @param monitor    the monitor, checked after each batch
+     * @return the number of reachable pairs from the members of the sources
+     */
+    private static long countReachablePairs(StronglyConnectedComponents components,
+                                            int firstBatch, int batchStep,
+                                            long[] fanIn, long[] fanOut, ProgressMonitor monitor) {
+        final int componentCount = components.getComponentCount();
+
+        long[] reached = new long[componentCount];
+        long[] sourceSizes = new long[8 * 256];
+        long[] reachedSizes = fanOut == null ? null : new long[8 * 256];
         long totalDeps = 0;
-        for (int i = 0; i < mapSize; i++) {
-            for (int j = 0; j < mapSize; j++) {
-                if ((sumMatrix.get(i, j)).booleanValue()) {
-                    totalDeps++;
+        for (int first = firstBatch << 6; first < componentCount; first += batchStep << 6) {
+            int last = Math.min(first + 64, componentCount);
+            for (int source = first; source < last; source++) {
+                reached[source] = 1L << (source - first);
+            }
+            for (int c = last - 1; c >= 0; c--) {
+                long sources = reached[c];
+                if (sources != 0) {
+                    for (int k = 0, count = components.getSuccessorCount(c); k < count; k++) {
+                        reached[components.getSuccessor(c, k)] |= sources;
+                    }
+                }
+            }
+
+            // sourceSizes[256 * b + v] is the total size of the sources selected by the value v of byte b
+            for (int b = 0; b < 8; b++) {
+                for (int v = 1; v < 256; v++) {
+                    int source = first + (b << 3) + Integer.numberOfTrailingZeros(v);
+                    long size = source < last ? components.getComponentSize(source) : 0;
+                    sourceSizes[(b << 8) + v] = sourceSizes[(b << 8) + (v & (v - 1))] + size;
+                }
+            }
+            for (int c = 0; c < last; c++) {
+                long sources = reached[c];
+                if (sources != 0) {
+                    long sourceSize = 0;
+                    for (int b = 0; b < 8; b++) {
+                        sourceSize += sourceSizes[(b << 8) + (int) ((sources >>> (b << 3)) & 0xFF)];
+                    }
+                    long size = components.getComponentSize(c);
+                    totalDeps += sourceSize * size;
+                    if (fanIn != null) {
+                        fanIn[c] += sourceSize;
+                    }
+                    if (reachedSizes != null) {
+                        // reachedSizes[256 * b + v] is the total size of the components reached by the value v of byte b
+                        for (int b = 0; b < 8; b++) {
+                            reachedSizes[(b << 8) + (int) ((sources >>> (b << 3)) & 0xFF)] += size;
+                        }
+                    }
+                    reached[c] = 0L;
                 }
             }
+            if (reachedSizes != null) {
+                for (int source = first; source < last; source++) {
+                    int b = (source - first) >>> 3;
+                    int bit = 1 << ((source - first) & 7);
+                    long total = 0;
+                    for (int v = bit; v < 256; v = (v + 1) | bit) {
+                        total += reachedSizes[(b << 8) + v];
+                    }
+                    fanOut[source] = total;
+                }
+                Arrays.fill(reachedSizes, 0L);
+            }
+            if (batchStep == 1 && (first >>> 6) % 50 == 49) {
+                logger.info("Processed " + last + " of " + componentCount + " components");
+            }
+            monitor.worked(last - first);
+            if (monitor.isStopped()) {
+                logger.info("Stopped after processing the components up to " + last);
+                break;
+            }
         }
+        return totalDeps;
+    }
 
+    /**
+     * Divides the number of reachable pairs by the number of pairs.
+     *
+     * @param components the strongly connected components of the DSM
+     * @param totalDeps  the number of reachable pairs
+     * @return the propagation cost
+     */
+    private static double toPropagationCost(StronglyConnectedComponents components, long totalDeps) {
+        long mapSize = components.getSize();
         double propagationCost = Rational.valueOf(totalDeps, mapSize * mapSize).doubleValue();
         logger.info("Computed propagation cost: " + propagationCost);
         return propagationCost;
     }
+
+    /**
+     * An estimate of the propagation cost, with the bounds of its confidence
+     * interval.
+     */
+    public static class PropagationCostEstimate {
+
+        /**
+         * The estimated propagation cost.
+         */
+        private double propagationCost;
+
+        /**
+         * The half-width of the confidence interval.
+         */
+        private double errorBound;
+
+        /**
+         * The confidence level of the interval.
+         */
+        private double confidence;
+
+        /**
+         * The number of sampled sources.
+         */
+        private int sampleCount;
+
+        /**
+         * Whether the propagation cost was computed exactly.
+         */
+        private boolean exact;
+
+        /**
+         * Instantiates a new propagation cost estimate.
+         *
+         * @param propagationCost the estimated propagation cost
+         * @param errorBound      the half-width of the confidence interval
+         * @param confidence      the confidence level of the interval
+         * @param sampleCount     the number of sampled sources
+         * @param exact           whether the propagation cost was computed exactly
+         */
+        public PropagationCostEstimate(double propagationCost, double errorBound,
+                                       double confidence, int sampleCount, boolean exact) {
+            this.propagationCost = propagationCost;
+            this.errorBound = errorBound;
+            this.confidence = confidence;
+            this.sampleCount = sampleCount;
+            this.exact = exact;
+        }
+
+        /**
+         * Gets the estimated propagation cost.
+         *
+         * @return the propagation cost
+         */
+        public double getPropagationCost() {
+            return propagationCost;
+        }
+
+        /**
+         * Gets the largest difference between the estimate and the propagation
+         * cost, at the confidence level of the estimate.
+         *
+         * @return the half-width of the confidence interval, 0 if exact
+         */
+        public double getErrorBound() {
+            return errorBound;
+        }
+
+        /**
+         * Gets the lower bound of the confidence interval.
+         *
+         * @return the lower bound
+         */
+        public double getLowerBound() {
+            return Math.max(0, propagationCost - errorBound);
+        }
+
+        /**
+         * Gets the upper bound of the confidence interval.
+         *
+         * @return the upper bound
+         */
+        public double getUpperBound() {
+            return Math.min(1, propagationCost + errorBound);
+        }
+
+        /**
+         * Gets the confidence level of the interval.
+         *
+         * @return the probability that the propagation cost is within the bounds
+         */
+        public double getConfidence() {
+            return confidence;
+        }
+
+        /**
+         * Gets the number of sampled sources.
+         *
+         * @return the sample count
+         */
+        public int getSampleCount() {
+            return sampleCount;
+        }
+
+        /**
+         * Checks if the propagation cost was computed exactly, because the
+         * sample would have been too large.
+         *
+         * @return true, if the propagation cost is exact
+         */
+        public boolean isExact() {
+            return exact;
+        }
+    }
+
+    /**
+     * The propagation cost of a DSM, with the visibility fan-in and fan-out of
+     * each element.
+     */
+    public static class PropagationCostResult {
+
+        /**
+         * The propagation cost.
+         */
+        private double propagationCost;
+
+        /**
+         * The number of pairs (i, j) such that j can be reached from i.
+         */
+        private long reachablePairs;
+
+        /**
+         * The number of elements reaching each element.
+         */
+        private int[] fanIn;
+
+        /**
+         * The number of elements reached by each element.
+         */
+        private int[] fanOut;
+
+        /**
+         * The position name mappings of the DSM.
+         */
+        private Map<Integer, String> positionNameMappings;
+
+        /**
+         * Instantiates a new propagation cost result.
+         *
+         * @param propagationCost      the propagation cost
+         * @param reachablePairs       the number of reachable pairs
+         * @param fanIn                the visibility fan-in of each position
+         * @param fanOut               the visibility fan-out of each position
+         * @param positionNameMappings the position name mappings of the DSM
+         */
+        public PropagationCostResult(double propagationCost, long reachablePairs, int[] fanIn, int[] fanOut,
+                                     Map<Integer, String> positionNameMappings) {
+            this.propagationCost = propagationCost;
+            this.reachablePairs = reachablePairs;
+            this.fanIn = fanIn;
+            this.fanOut = fanOut;
+            this.positionNameMappings = positionNameMappings;
+        }
+
+        /**
+         * Gets the propagation cost.
+         *
+         * @return the propagation cost, as returned by
+         * {@link PropagationCost#computePropagationCost(DesignStructureMatrix)}
+         */
+        public double getPropagationCost() {
+            return propagationCost;
+        }
+
+        /**
+         * Gets the number of pairs (i, j) such that j can be reached from i, i
+         * included. It is the sum of the fan-ins, and of the fan-outs.
+         *
+         * @return the number of reachable pairs
+         */
+        public long getReachablePairCount() {
+            return reachablePairs;
+        }
+
+        /**
+         * Gets the number of elements.
+         *
+         * @return the number of elements
+         */
+        public int getSize() {
+            return fanIn.length;
+        }
+
+        /**
+         * Gets the name of the element at a position.
+         *
+         * @param position the position
+         * @return the name
+         */
+        public String getName(int position) {
+            return positionNameMappings.get(position);
+        }
+
+        /**
+         * Gets the visibility fan-in of an element.
+         *
+         * @param position the position of the element
+         * @return the number of elements that depend on it, directly or not,
+         * itself included
+         */
+        public int getFanIn(int position) {
+            return fanIn[position];
+        }
+
+        /**
+         * Gets the visibility fan-out of an element.
+         *
+         * @param position the position of the element
+         * @return the number of elements it depends on, directly or not, itself
+         * included
+         */
+        public int getFanOut(int position) {
+            return fanOut[position];
+        }
+
+        /**
+         * Gets the visibility fan-in of each element by name.
+         *
+         * @return the fan-in mappings
+         */
+        public Map<String, Integer> getFanInMappings() {
+            return toNameMappings(fanIn);
+        }
+
+        /**
+         * Gets the visibility fan-out of each element by name.
+         *
+         * @return the fan-out mappings
+         */
+        public Map<String, Integer> getFanOutMappings() {
+            return toNameMappings(fanOut);
+        }
+
+        /**
+         * Maps the names of the elements to counts.
+         *
+         * @param counts the count of each position
+         * @return the count of each name
+         */
+        private Map<String, Integer> toNameMappings(int[] counts) {
+            Map<String, Integer> mappings = new HashMap<String, Integer>();
+            for (int i = 0; i < counts.length; i++) {
+                mappings.put(positionNameMappings.get(i), counts[i]);
+            }
+            return mappings;
+        }
+    }
 }
@@ -0,0 +1,487 @@
+/*
+Copyright (c) 2008, Roberto Milev
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or 
+without modification, are permitted provided that the following 
+conditions are met:
+
+    * Redistributions of source code must retain the above 
+      copyright notice, this list of conditions and the following 
+      disclaimer.
+    * Redistributions in binary form must reproduce the above 
+      copyright notice, this list of conditions and the following 
+      disclaimer in the documentation and/or other materials 
+      provided with the distribution.
+    * Neither the name of the Carleton University nor the names 
+      of its contributors may be used to endorse or promote 
+      products derived from this software without specific prior 
+      written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR 
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF 
+ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+*/
+package edu.carleton.tim.jdsm.dependency.analysis;
+
+import edu.carleton.tim.jdsm.DesignStructureMatrix;
+import edu.carleton.tim.jdsm.dependency.Dependency;
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+
+/**
+ * An index answering "does an element depend, directly or not, on another"
+ * without computing the transitive closure. <br>
+ * <br>
+ * The DSM is condensed to its strongly connected components, whose members
+ * all reach the same elements, and each component is labelled with the
+ * intervals of a few randomized depth first traversals of the condensed
+ * graph. If a component reaches another, the interval of the other is
+ * contained in its interval, so most negative queries are answered by
+ * comparing labels; the first traversal also gives the spanning tree
+ * intervals, which answer the positive queries along the tree. The other
+ * queries walk the condensed graph from the source, skipping every component
+ * whose labels exclude the target. The index uses O(N + E) memory for N
+ * elements and E dependencies. <br>
+ * <br>
+ * As in {@link PropagationCost}, every element reaches itself. The index is a
+ * snapshot of the DSM when it was created; it does not follow later changes
+ * to the DSM. Queries can be made from several threads at once.
+ */
+public class ReachabilityIndex {
+
+    /**
+     * The logger.
+     */
+    private static Logger logger = Logger.getLogger(ReachabilityIndex.class);
+
+    /**
+     * The default number of interval labels of each component.
+     */
+    public static final int DEFAULT_TRAVERSALS = 3;
+
+    /**
+     * The strongly connected components of the DSM.
+     */
+    protected StronglyConnectedComponents components;
+
+    /**
+     * The index in {@link #predecessors} of the first predecessor of each
+     * component, followed by the number of dependencies between components.
+     */
+    protected int[] predecessorOffsets;
+
+    /**
+     * The components depending on each component, component by component.
+     */
+    protected int[] predecessors;
+
+    /**
+     * The lowest post-order rank below each component, for each traversal.
+     */
+    protected int[][] low;
+
+    /**
+     * The post-order rank of each component, for each traversal.
+     */
+    protected int[][] post;
+
+    /**
+     * The pre-order rank of each component in the first traversal.
+     */
+    protected int[] pre;
+
+    /**
+     * The name position mappings of the DSM.
+     */
+    protected Map<String, Integer> namePositionMappings;
+
+    /**
+     * The position name mappings of the DSM.
+     */
+    protected Map<Integer, String> positionNameMappings;
+
+    /**
+     * The marks and the stack of the walks of each thread.
+     */
+    private final ThreadLocal<Walk> walks = ThreadLocal.withInitial(Walk::new);
+
+    /**
+     * Instantiates a new reachability index with the default number of
+     * traversals.
+     *
+     * @param dsm the DSM
+     */
+    public ReachabilityIndex(DesignStructureMatrix<Dependency> dsm) {
+        this(dsm, DEFAULT_TRAVERSALS, 0L);
+    }
+
+    /**
+     * Instantiates a new reachability index.
+     *
+     * @param dsm        the DSM
+     * @param traversals the number of interval labels of each component. More
+     *                   labels answer more negative queries without a walk, at
+     *                   the cost of two integers per component each
+     * @param seed       the seed of the order of the traversals
+     */
+    public ReachabilityIndex(DesignStructureMatrix<Dependency> dsm, int traversals, long seed) {
+        if (traversals < 1) {
+            throw new IllegalArgumentException("At least one traversal is needed: " + traversals);
+        }
+        logger.debug("Started building reachability index.");
+        components = new StronglyConnectedComponents(dsm);
+        namePositionMappings = new HashMap<String, Integer>(dsm.getNamePositionMappings());
+        positionNameMappings = new HashMap<Integer, String>(dsm.getPositionNameMappings());
+        int componentCount = components.getComponentCount();
+
+        predecessorOffsets = new int[componentCount + 1];
+        for (int c = 0; c < componentCount; c++) {
+            for (int k = 0; k < components.getSuccessorCount(c); k++) {
+                predecessorOffsets[components.getSuccessor(c, k) + 1]++;
+            }
+        }
+        for (int c = 0; c < componentCount; c++) {
+            predecessorOffsets[c + 1] += predecessorOffsets[c];
+        }
+        predecessors = new int[predecessorOffsets[componentCount]];
+        int[] next = Arrays.copyOf(predecessorOffsets, componentCount);
+        for (int c = 0; c < componentCount; c++) {
+            for (int k = 0; k < components.getSuccessorCount(c); k++) {
+                int successor = components.getSuccessor(c, k);
+                predecessors[next[successor]++] = c;
+            }
+        }
+
+        Random random = new Random(seed);
+        low = new int[traversals][];
+        post = new int[traversals][];
+        pre = new int[componentCount];
+        for (int t = 0; t < traversals; t++) {
+            traverse(t, random);
+        }
+        logger.debug("Built reachability index of " + componentCount + " components.");
+    }
+
+    /**
+     * Labels the components with the intervals of a depth first traversal of
+     * the condensed graph, from the components no other component depends
+     * on. The first traversal visits the successors in order; the others
+     * start at a random successor.
+     *
+     * @param t      the traversal
+     * @param random the source of the random order
+     */
+    private void traverse(int t, Random random) {
+        int componentCount = components.getComponentCount();
+        int[] traversalLow = new int[componentCount];
+        int[] traversalPost = new int[componentCount];
+        boolean[] visited = new boolean[componentCount];
+        int[] path = new int[componentCount];
+        int[] start = new int[componentCount];
+        int[] next = new int[componentCount];
+        int preCounter = 0;
+        int postCounter = 0;
+
+        // the components are numbered in reverse topological order, so the roots come last
+        for (int r = componentCount - 1; r >= 0; r--) {
+            int root = t == 0 ? r : componentCount - 1 - r;
+            if (visited[root] || predecessorOffsets[root + 1] > predecessorOffsets[root]) {
+                continue;
+            }
+            int depth = 0;
+            path[0] = root;
+            visited[root] = true;
+            int count = components.getSuccessorCount(root);
+            start[root] = t == 0 || count == 0 ? 0 : random.nextInt(count);
+            next[root] = 0;
+            traversalLow[root] = Integer.MAX_VALUE;
+            if (t == 0) {
+                pre[root] = preCounter++;
+            }
+            while (depth >= 0) {
+                int component = path[depth];
+                count = components.getSuccessorCount(component);
+                if (next[component] < count) {
+                    int successor = components.getSuccessor(component, (start[component] + next[component]++) % count);
+                    if (!visited[successor]) {
+                        visited[successor] = true;
+                        int successorCount = components.getSuccessorCount(successor);
+                        start[successor] = t == 0 || successorCount == 0 ? 0 : random.nextInt(successorCount);
+                        next[successor] = 0;
+                        traversalLow[successor] = Integer.MAX_VALUE;
+                        if (t == 0) {
+                            pre[successor] = preCounter++;
+                        }
+                        path[++depth] = successor;
+                    } else if (traversalLow[successor] < traversalLow[component]) {
+                        traversalLow[component] = traversalLow[successor];
+                    }
+                } else {
+                    traversalPost[component] = postCounter++;
+                    traversalLow[component] = Math.min(traversalLow[component], traversalPost[component]);
+                    depth--;
+                    if (depth >= 0 && traversalLow[component] < traversalLow[path[depth]]) {
+                        traversalLow[path[depth]] = traversalLow[component];
+                    }
+                }
+            }
+        }
+        low[t] = traversalLow;
+        post[t] = traversalPost;
+    }
+
+    /**
+     * Gets the number of elements.
+     *
+     * @return the number of elements
+     */
+    public int getSize() {
+        return components.getSize();
+    }
+
+    /**
+     * Gets the strongly connected components the index is built on.
+     *
+     * @return the components
+     */
+    public StronglyConnectedComponents getComponents() {
+        return components;
+    }
+
+    /**
+     * Checks if an element depends, directly or not, on another.
+     *
+     * @param row    the position of the element
+     * @param column the position of the other element
+     * @return true, if the other element can be reached from the element
+     */
+    public boolean isReachable(int row, int column) {
+        int source = components.getComponent(row);
+        int target = components.getComponent(column);
+        if (source == target) {
+            return true;
+        }
+        // dependencies go to lower numbers
+        if (target > source || excludes(source, target)) {
+            return false;
+        }
+        if (pre[source] <= pre[target] && post[0][target] <= post[0][source]) {
+            // the target is below the source in the first spanning tree
+            return true;
+        }
+
+        Walk walk = walks.get();
+        int mark = walk.nextMark();
+        int depth = 0;
+        walk.stack[depth++] = source;
+        walk.marks[source] = mark;
+        while (depth > 0) {
+            int component = walk.stack[--depth];
+            for (int k = 0, count = components.getSuccessorCount(component); k < count; k++) {
+                int successor = components.getSuccessor(component, k);
+                if (successor == target) {
+                    return true;
+                }
+                if (walk.marks[successor] != mark) {
+                    walk.marks[successor] = mark;
+                    if (successor > target && !excludes(successor, target)) {
+                        walk.stack[depth++] = successor;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if an element depends, directly or not, on another.
+     *
+     * @param from the name of the element
+     * @param to   the name of the other element
+     * @return true, if the other element can be reached from the element
+     */
+    public boolean isReachable(String from, String to) {
+        return isReachable(getPosition(from), getPosition(to));
+    }
+
+    /**
+     * Gets the elements an element depends on, directly or not, itself
+     * included. Only the components reached are visited.
+     *
+     * @param position the position of the element
+     * @return the positions of the reached elements, in no particular order
+     */
+    public int[] getReachable(int position) {
+        return collect(components.getComponent(position), true);
+    }
+
+    /**
+     * Gets the elements an element depends on, directly or not, itself
+     * included.
+     *
+     * @param name the name of the element
+     * @return the names of the reached elements, in no particular order
+     */
+    public List<String> getReachable(String name) {
+        return toNames(getReachable(getPosition(name)));
+    }
+
+    /**
+     * Gets the elements depending, directly or not, on an element, itself
+     * included. Only the components reaching it are visited.
+     *
+     * @param position the position of the element
+     * @return the positions of the reaching elements, in no particular order
+     */
+    public int[] getReaching(int position) {
+        return collect(components.getComponent(position), false);
+    }
+
+    /**
+     * Gets the elements depending, directly or not, on an element, itself
+     * included.
+     *
+     * @param name the name of the element
+     * @return the names of the reaching elements, in no particular order
+     */
+    public List<String> getReaching(String name) {
+        return toNames(getReaching(getPosition(name)));
+    }
+
+    /**
+     * Checks if the labels of a component exclude that it reaches another.
+     *
+     * @param source the component
+     * @param target the other component
+     * @return true, if the source surely does not reach the target
+     */
+    private boolean excludes(int source, int target) {
+        for (int t = 0; t < post.length; t++) {
+            if (post[t][target] > post[t][source] || low[t][target] < low[t][source]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Collects the members of the components reached by, or reaching, a
+     * component.
+     *
+     * @param start      the component
+     * @param downstream true to follow the dependencies, false to follow them
+     *                   backwards
+     * @return the positions of the members
+     */
+    private int[] collect(int start, boolean downstream) {
+        Walk walk = walks.get();
+        int mark = walk.nextMark();
+        int depth = 0;
+        int memberCount = 0;
+        walk.stack[depth++] = start;
+        walk.marks[start] = mark;
+        int[] reached = new int[16];
+        while (depth > 0) {
+            int component = walk.stack[--depth];
+            int size = components.getComponentSize(component);
+            if (memberCount + size > reached.length) {
+                reached = Arrays.copyOf(reached, Math.max(reached.length * 2, memberCount + size));
+            }
+            for (int m = 0; m < size; m++) {
+                reached[memberCount++] = components.getMember(component, m);
+            }
+            int count = downstream ? components.getSuccessorCount(component)
+                    : predecessorOffsets[component + 1] - predecessorOffsets[component];
+            for (int k = 0; k < count; k++) {
+                int neighbour = downstream ? components.getSuccessor(component, k)
+                        : predecessors[predecessorOffsets[component] + k];
+                if (walk.marks[neighbour] != mark) {
+                    walk.marks[neighbour] = mark;
+                    walk.stack[depth++] = neighbour;
+                }
+            }
+        }
+        return Arrays.copyOf(reached, memberCount);
+    }
+
+    /**
+     * Gets the position of an element.
+     *
+     * @param name the name of the element
+     * @return the position
+     */
+    private int getPosition(String name) {
+        Integer position = namePositionMappings.get(name);
+        if (position == null) {
+            throw new IllegalArgumentException("No element named " + name);
+        }
+        return position;
+    }
+
+    /**
+     * Gets the names of elements.
+     *
+     * @param positions the positions of the elements
+     * @return the names
+     */
+    private List<String> toNames(int[] positions) {
+        List<String> names = new ArrayList<String>(positions.length);
+        for (int position : positions) {
+            names.add(positionNameMappings.get(position));
+        }
+        return names;
+    }
+
+    /**
+     * The marks and the stack of the walks of a thread, so that a query does
+     * not allocate or clear arrays as large as the DSM.
+     */
+    private class Walk {
+
+        /**
+         * The last mark of each component.
+         */
+        private int[] marks = new int[components.getComponentCount()];
+
+        /**
+         * The components to visit.
+         */
+        private int[] stack = new int[components.getComponentCount()];
+
+        /**
+         * The mark of the current walk.
+         */
+        private int mark;
+
+        /**
+         * Starts a new walk.
+         *
+         * @return the mark of the components visited by the walk
+         */
+        private int nextMark() {
+            if (++mark == Integer.MAX_VALUE) {
+                Arrays.fill(marks, 0);
+                mark = 1;
+            }
+            return mark;
+        }
+    }
+}
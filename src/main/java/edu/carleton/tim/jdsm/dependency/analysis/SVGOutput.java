@@ -35,6 +35,7 @@ ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package edu.carleton.tim.jdsm.dependency.analysis;
 
 import edu.carleton.tim.jdsm.DesignStructureMatrix;
+import edu.carleton.tim.jdsm.ProgressMonitor;
 import edu.carleton.tim.jdsm.dependency.Dependency;
 import org.apache.log4j.Logger;
 
@@ -64,8 +65,22 @@ public class SVGOutput {
      * @param outputStream the output stream to print to
      */
     public static void printDsm(DesignStructureMatrix<Dependency> dsm, OutputStream outputStream) {
+        printDsm(dsm, outputStream, new ProgressMonitor());
+    }
+
+    /**
+     * Prints the DSM to a Scalable Vector Graphic (SVG) format, stopping early
+     * if the monitor asks to. The monitor is checked before each row; when it
+     * stops the printing, the rows printed so far are closed into a valid SVG.
+     *
+     * @param dsm          the DSM
+     * @param outputStream the output stream to print to
+     * @param monitor      the monitor of the printing
+     */
+    public static void printDsm(DesignStructureMatrix<Dependency> dsm, OutputStream outputStream,
+                                ProgressMonitor monitor) {
         PrintStream outStream = new PrintStream(outputStream);
-        printHeader(outStream, dsm.getMap().length, dsm.getMap().length);
+        printHeader(outStream, dsm.getSize(), dsm.getSize());
 
         for (String currentPackage : dsm.getClusterStartPositionMappings().keySet()) {
 
@@ -78,13 +93,22 @@ public class SVGOutput {
                             - dsm.getClusterStartPositionMappings().get(currentPackage));
         }
 
-        for (int i = 0; i < dsm.getMap().length; i++) {
-            for (int j = 0; j < dsm.getMap().length; j++) {
-                if (dsm.getMap()[i][j].booleanValue()) {
-                    printRectangle(outStream, i, j, 1, 1);
-                }
+        monitor.begin("Printing DSM to SVG", dsm.getSize());
+        int printedRows = 0;
+        for (int i = 0; i < dsm.getSize(); i++) {
+            if (monitor.isStopped()) {
+                logger.info("Stopped printing DSM to SVG after " + i + " rows.");
+                break;
+            }
+            final int row = i;
+            dsm.forEachDependencyInRow(row, column -> printRectangle(outStream, row, column, 1, 1));
+            printedRows++;
+            if ((printedRows & 255) == 0) {
+                monitor.worked(256);
             }
         }
+        // the rows of the last partial batch
+        monitor.worked(printedRows & 255);
 
         printFooter(outStream);
         outStream.close();
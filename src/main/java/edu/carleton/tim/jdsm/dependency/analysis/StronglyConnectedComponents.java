@@ -0,0 +1,355 @@
+/*
+Copyright (c) 2008, Roberto Milev
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or 
+without modification, are permitted provided that the following 
+conditions are met:
+
+    * Redistributions of source code must retain the above 
+      copyright notice, this list of conditions and the following 
+      disclaimer.
+    * Redistributions in binary form must reproduce the above 
+      copyright notice, this list of conditions and the following 
+      disclaimer in the documentation and/or other materials 
+      provided with the distribution.
+    * Neither the name of the Carleton University nor the names 
+      of its contributors may be used to endorse or promote 
+      products derived from this software without specific prior 
+      written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR 
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF 
+ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+*/
+package edu.carleton.tim.jdsm.dependency.analysis;
+
+import edu.carleton.tim.jdsm.DesignStructureMatrix;
+import edu.carleton.tim.jdsm.dependency.Dependency;
+import org.apache.log4j.Logger;
+
+import java.util.Arrays;
+
+
+/**
+ * The strongly connected components of a DSM, and the DSM condensed to a
+ * directed acyclic graph of components. <br>
+ * <br>
+ * Two elements are in the same component when each of them depends,
+ * directly or not, on the other; the elements of a component therefore all
+ * have the same reachable elements. The components are found with an
+ * iterative version of Tarjan's algorithm, in O(N + E) time for E
+ * dependencies, and are numbered in reverse topological order: every
+ * dependency between two components goes from a component to one with a
+ * lower number. <br>
+ * <br>
+ * The result is a snapshot of the positions of the DSM when it was created;
+ * it does not follow later changes to the DSM.
+ */
+public class StronglyConnectedComponents {
+
+    /**
+     * The logger.
+     */
+    private static Logger logger = Logger.getLogger(StronglyConnectedComponents.class);
+
+    /**
+     * The number of elements.
+     */
+    protected int size;
+
+    /**
+     * The number of components.
+     */
+    protected int componentCount;
+
+    /**
+     * The component of each position.
+     */
+    protected int[] componentOf;
+
+    /**
+     * The index in {@link #members} of the first member of each component,
+     * followed by the number of elements.
+     */
+    protected int[] memberOffsets;
+
+    /**
+     * The positions of the members of the components, component by component.
+     */
+    protected int[] members;
+
+    /**
+     * The index in {@link #successors} of the first successor of each
+     * component, followed by the number of dependencies between components.
+     */
+    protected int[] successorOffsets;
+
+    /**
+     * The components each component depends on, component by component.
+     */
+    protected int[] successors;
+
+    /**
+     * Whether each component has a cycle, that is more than one member or a
+     * member that depends on itself.
+     */
+    protected boolean[] cyclic;
+
+    /**
+     * Computes the strongly connected components of a DSM.
+     *
+     * @param dsm the DSM
+     */
+    public StronglyConnectedComponents(DesignStructureMatrix<Dependency> dsm) {
+        logger.debug("Started computing strongly connected components.");
+        size = dsm.getSize();
+
+        // the dependencies of each position, in compressed rows
+        final int[] offsets = new int[size + 1];
+        for (int i = 0; i < size; i++) {
+            offsets[i + 1] = offsets[i] + dsm.getRowDegree(i);
+        }
+        final int[] targets = new int[offsets[size]];
+        final int[] next = Arrays.copyOf(offsets, size);
+        for (int i = 0; i < size; i++) {
+            final int row = i;
+            dsm.forEachDependencyInRow(row, column -> targets[next[row]++] = column);
+        }
+
+        computeComponents(offsets, targets);
+        condense(offsets, targets);
+        logger.debug("Computed " + componentCount + " strongly connected components of " + size + " elements.");
+    }
+
+    /**
+     * Computes the strongly connected components of a graph given as
+     * compressed rows.
+     *
+     * @param size    the number of elements
+     * @param offsets the index in <code>targets</code> of the first dependency
+     *                of each element, followed by the number of dependencies
+     * @param targets the dependencies of each element, element by element
+     */
+    StronglyConnectedComponents(int size, int[] offsets, int[] targets) {
+        this.size = size;
+        computeComponents(offsets, targets);
+        condense(offsets, targets);
+    }
+
+    /**
+     * Runs Tarjan's algorithm with an explicit stack, so that long dependency
+     * chains do not overflow the call stack, and fills {@link #componentOf}.
+     *
+     * @param offsets the index of the first dependency of each position
+     * @param targets the dependencies of each position
+     */
+    private void computeComponents(int[] offsets, int[] targets) {
+        componentOf = new int[size];
+        Arrays.fill(componentOf, -1);
+        int[] index = new int[size];
+        Arrays.fill(index, -1);
+        int[] low = new int[size];
+        int[] next = new int[size];
+        int[] stack = new int[size];
+        int[] path = new int[size];
+        int stackSize = 0;
+        int counter = 0;
+        componentCount = 0;
+
+        for (int root = 0; root < size; root++) {
+            if (index[root] >= 0) {
+                continue;
+            }
+            int depth = 0;
+            path[0] = root;
+            index[root] = low[root] = counter++;
+            next[root] = offsets[root];
+            stack[stackSize++] = root;
+            while (depth >= 0) {
+                int element = path[depth];
+                if (next[element] < offsets[element + 1]) {
+                    int dependable = targets[next[element]++];
+                    if (index[dependable] < 0) {
+                        index[dependable] = low[dependable] = counter++;
+                        next[dependable] = offsets[dependable];
+                        stack[stackSize++] = dependable;
+                        path[++depth] = dependable;
+                    } else if (componentOf[dependable] < 0 && index[dependable] < low[element]) {
+                        // still on the stack, so in the component being built
+                        low[element] = index[dependable];
+                    }
+                } else {
+                    if (low[element] == index[element]) {
+                        int member;
+                        do {
+                            member = stack[--stackSize];
+                            componentOf[member] = componentCount;
+                        } while (member != element);
+                        componentCount++;
+                    }
+                    depth--;
+                    if (depth >= 0 && low[element] < low[path[depth]]) {
+                        low[path[depth]] = low[element];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Groups the members of each component and computes the dependencies
+     * between components, without duplicates.
+     *
+     * @param offsets the index of the first dependency of each position
+     * @param targets the dependencies of each position
+     */
+    private void condense(int[] offsets, int[] targets) {
+        memberOffsets = new int[componentCount + 1];
+        for (int i = 0; i < size; i++) {
+            memberOffsets[componentOf[i] + 1]++;
+        }
+        for (int c = 0; c < componentCount; c++) {
+            memberOffsets[c + 1] += memberOffsets[c];
+        }
+        members = new int[size];
+        int[] next = Arrays.copyOf(memberOffsets, componentCount);
+        for (int i = 0; i < size; i++) {
+            members[next[componentOf[i]]++] = i;
+        }
+
+        cyclic = new boolean[componentCount];
+        successorOffsets = new int[componentCount + 1];
+        int[] condensed = new int[Math.max(targets.length, 1)];
+        int count = 0;
+        int[] lastSeen = new int[componentCount];
+        Arrays.fill(lastSeen, -1);
+        for (int c = 0; c < componentCount; c++) {
+            cyclic[c] = memberOffsets[c + 1] - memberOffsets[c] > 1;
+            for (int m = memberOffsets[c]; m < memberOffsets[c + 1]; m++) {
+                int element = members[m];
+                for (int k = offsets[element]; k < offsets[element + 1]; k++) {
+                    int dependable = componentOf[targets[k]];
+                    if (dependable == c) {
+                        cyclic[c] = true;
+                    } else if (lastSeen[dependable] != c) {
+                        lastSeen[dependable] = c;
+                        condensed[count++] = dependable;
+                    }
+                }
+            }
+            successorOffsets[c + 1] = count;
+        }
+        successors = Arrays.copyOf(condensed, count);
+    }
+
+    /**
+     * Gets the number of elements of the DSM.
+     *
+     * @return the number of elements
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Gets the number of components.
+     *
+     * @return the number of components
+     */
+    public int getComponentCount() {
+        return componentCount;
+    }
+
+    /**
+     * Gets the component of an element.
+     *
+     * @param position the position of the element
+     * @return the component
+     */
+    public int getComponent(int position) {
+        return componentOf[position];
+    }
+
+    /**
+     * Gets the number of members of a component.
+     *
+     * @param component the component
+     * @return the number of elements in the component
+     */
+    public int getComponentSize(int component) {
+        return memberOffsets[component + 1] - memberOffsets[component];
+    }
+
+    /**
+     * Gets a member of a component. Members are returned in position order.
+     *
+     * @param component the component
+     * @param index     the index of the member, from 0 to
+     *                  {@link #getComponentSize(int)} - 1
+     * @return the position of the member
+     */
+    public int getMember(int component, int index) {
+        return members[memberOffsets[component] + index];
+    }
+
+    /**
+     * Checks if a component has a cycle, that is if it has more than one
+     * member or if its member depends on itself.
+     *
+     * @param component the component
+     * @return true, if the component is cyclic
+     */
+    public boolean isCyclic(int component) {
+        return cyclic[component];
+    }
+
+    /**
+     * Gets the number of components a component depends on.
+     *
+     * @param component the component
+     * @return the number of components the members depend on, the component
+     * itself excluded
+     */
+    public int getSuccessorCount(int component) {
+        return successorOffsets[component + 1] - successorOffsets[component];
+    }
+
+    /**
+     * Gets a component a component depends on. It always has a lower number
+     * than the component.
+     *
+     * @param component the component
+     * @param index     the index of the successor, from 0 to
+     *                  {@link #getSuccessorCount(int)} - 1
+     * @return the successor
+     */
+    public int getSuccessor(int component, int index) {
+        return successors[successorOffsets[component] + index];
+    }
+
+    /**
+     * Gets the component with the most members.
+     *
+     * @return the largest component, or -1 if the DSM is empty
+     */
+    public int getLargestComponent() {
+        int largest = -1;
+        for (int c = 0; c < componentCount; c++) {
+            if (largest < 0 || getComponentSize(c) > getComponentSize(largest)) {
+                largest = c;
+            }
+        }
+        return largest;
+    }
+}
@@ -0,0 +1,311 @@
+/*
+Copyright (c) 2008, Roberto Milev
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or 
+without modification, are permitted provided that the following 
+conditions are met:
+
+    * Redistributions of source code must retain the above 
+      copyright notice, this list of conditions and the following 
+      disclaimer.
+    * Redistributions in binary form must reproduce the above 
+      copyright notice, this list of conditions and the following 
+      disclaimer in the documentation and/or other materials 
+      provided with the distribution.
+    * Neither the name of the Carleton University nor the names 
+      of its contributors may be used to endorse or promote 
+      products derived from this software without specific prior 
+      written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND 
+CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, 
+INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF 
+MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR 
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, 
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF 
+ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+*/
+package edu.carleton.tim.jdsm.dependency.analysis;
+
+import edu.carleton.tim.jdsm.DesignStructureMatrix;
+import edu.carleton.tim.jdsm.DoubleDSM;
+import edu.carleton.tim.jdsm.ProgressMonitor;
+import org.apache.log4j.Logger;
+import org.jscience.mathematics.number.Real;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+
+/**
+ * The Class WeightedPropagation. Computes how strongly a change in one element
+ * of a weighted DSM, such as a {@link edu.carleton.tim.jdsm.RealNumberDSM},
+ * can reach every other element. <br>
+ * <br>
+ * The cell at row i and column j of the DSM is the strength of the dependency
+ * of i on j, and the strength of a path is the product of the strengths of its
+ * dependencies, so the strengths of the paths of length k are the cells of
+ * W<sup>k</sup>. The impact of j on i is the sum of the strengths of the paths
+ * from i to j of at most <code>maxPathLength</code> dependencies, the paths of
+ * length k being weighted by <code>decay</code><sup>k - 1</sup>: <br>
+ * <code>impact = W + decay * W^2 + ... + decay^(L - 1) * W^L</code> <br>
+ * <br>
+ * The powers are computed on primitive doubles with a cache-blocked matrix
+ * multiply that skips the zero cells of the left matrix, and that can share
+ * its row blocks between the threads of an executor. The computation stops
+ * early when a power is zero, as with an acyclic DSM. It needs O(L * N^3) time
+ * at most and three N x N arrays of doubles, so it is limited to the size of a
+ * {@link DoubleDSM}.
+ */
+public class WeightedPropagation {
+
+    /**
+     * The logger.
+     */
+    private static Logger logger = Logger.getLogger(WeightedPropagation.class);
+
+    /**
+     * The number of rows and columns of the blocks of the multiply.
+     */
+    private static final int BLOCK_SIZE = 64;
+
+    /**
+     * Computes the impact matrix on the current thread.
+     *
+     * @param dsm           the weighted DSM to be analyzed
+     * @param maxPathLength the longest paths counted, at least 1
+     * @param decay         the factor applied to the strength of a path for
+     *                      each dependency after the first one, such as 0.5;
+     *                      1 counts all paths fully
+     * @return a DSM with the same elements and clusters, whose cell at row i and
+     * column j is the impact of j on i
+     */
+    public static DoubleDSM computeImpact(DesignStructureMatrix<Real> dsm, int maxPathLength, double decay) {
+        try {
+            return computeImpact(dsm, maxPathLength, decay, null, 1, new ProgressMonitor());
+        } catch (InterruptedException e) {
+            // no task is waited for on the current thread
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Computes the impact matrix on several threads.
+     *
+     * @param dsm           the weighted DSM to be analyzed
+     * @param maxPathLength the longest paths counted, at least 1
+     * @param decay         the factor applied to the strength of a path for
+     *                      each dependency after the first one
+     * @param parallelism   the number of threads to use
+     * @return a DSM with the same elements and clusters, whose cell at row i and
+     * column j is the impact of j on i
+     * @throws InterruptedException if the thread is interrupted while waiting
+     *                              for the result
+     */
+    public static DoubleDSM computeImpact(DesignStructureMatrix<Real> dsm, int maxPathLength, double decay,
+                                          int parallelism) throws InterruptedException {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return computeImpact(dsm, maxPathLength, decay, pool, parallelism, new ProgressMonitor());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Computes the impact matrix on the threads of an executor. Each multiply
+     * deals the blocks of rows of its result to the tasks in turn; the tasks
+     * write disjoint rows, so the result does not depend on the number of
+     * tasks. The monitor is checked before each multiply; when it stops the
+     * computation, the impact only counts the paths of the lengths done so
+     * far.
+     *
+     * @param dsm           the weighted DSM to be analyzed
+     * @param maxPathLength the longest paths counted, at least 1
+     * @param decay         the factor applied to the strength of a path for
+     *                      each dependency after the first one
+     * @param executor      the executor running the tasks, or null to run on
+     *                      the current thread
+     * @param parallelism   the number of tasks of each multiply
+     * @param monitor       the monitor of the computation
+     * @return a DSM with the same elements and clusters, whose cell at row i and
+     * column j is the impact of j on i
+     * @throws InterruptedException if the thread is interrupted while waiting
+     *                              for the result
+     */
+    public static DoubleDSM computeImpact(DesignStructureMatrix<Real> dsm, int maxPathLength, double decay,
+                                          ExecutorService executor, int parallelism, ProgressMonitor monitor)
+            throws InterruptedException {
+        if (maxPathLength < 1) {
+            throw new IllegalArgumentException("The path length limit must be at least 1: " + maxPathLength);
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be at least 1: " + parallelism);
+        }
+        logger.info("Started computing weighted impact.");
+        DoubleDSM weights = dsm instanceof DoubleDSM ? (DoubleDSM) dsm : new DoubleDSM(dsm);
+        int size = weights.getSize();
+        DoubleDSM impact = new DoubleDSM(new HashMap<String, Integer>(dsm.getClusterEndPositionMappings()),
+                new HashMap<String, Integer>(dsm.getClusterStartPositionMappings()),
+                new HashMap<String, Integer>(dsm.getNamePositionMappings()),
+                new HashMap<Integer, String>(dsm.getPositionNameMappings()),
+                size);
+
+        double[] w = weights.getValues();
+        double[] sum = impact.getValues();
+        double[] power = w.clone();
+        double[] next = new double[power.length];
+        System.arraycopy(w, 0, sum, 0, w.length);
+        monitor.begin("Computing weighted impact", maxPathLength);
+        monitor.worked(1);
+        for (int length = 2; length <= maxPathLength; length++) {
+            if (monitor.isStopped()) {
+                logger.info("Stopped computing weighted impact after paths of length " + (length - 1));
+                break;
+            }
+            multiply(power, w, next, size, executor, parallelism);
+            boolean zero = true;
+            for (int x = 0; x < next.length; x++) {
+                double value = next[x] * decay;
+                next[x] = value;
+                if (value != 0) {
+                    sum[x] += value;
+                    zero = false;
+                }
+            }
+            double[] swap = power;
+            power = next;
+            next = swap;
+            monitor.worked(1);
+            if (zero) {
+                logger.info("No paths longer than " + (length - 1));
+                break;
+            }
+        }
+        logger.info("Computed weighted impact.");
+        return impact;
+    }
+
+    /**
+     * Computes the weighted propagation cost: the mean impact of an element on
+     * an element, each element having an impact of exactly 1 on itself as in
+     * {@link PropagationCost}. The diagonal of the impact matrix, which holds
+     * the strength of the cycles through each element, is left out. The other
+     * cells sum the strengths of all the paths rather than tell whether one
+     * exists, so the cost can exceed 1 when the strengths are not small.
+     *
+     * @param impact the impact matrix, as computed by
+     *               {@link #computeImpact(DesignStructureMatrix, int, double)}
+     * @return the weighted propagation cost
+     */
+    public static double computeWeightedPropagationCost(DoubleDSM impact) {
+        int size = impact.getSize();
+        double[] values = impact.getValues();
+        double total = size;
+        for (int i = 0; i < size; i++) {
+            int row = i * size;
+            for (int j = 0; j < size; j++) {
+                if (i != j) {
+                    total += values[row + j];
+                }
+            }
+        }
+        double propagationCost = total / ((double) size * size);
+        logger.info("Computed weighted propagation cost: " + propagationCost);
+        return propagationCost;
+    }
+
+    /**
+     * Multiplies two N x N matrices in row-major order.
+     *
+     * @param a           the left matrix
+     * @param b           the right matrix
+     * @param c           receives the product
+     * @param size        N
+     * @param executor    the executor running the tasks, or null to run on
+     *                    the current thread
+     * @param parallelism the number of tasks
+     * @throws InterruptedException if the thread is interrupted while waiting
+     *                              for the tasks
+     */
+    private static void multiply(final double[] a, final double[] b, final double[] c, final int size,
+                                 ExecutorService executor, int parallelism) throws InterruptedException {
+        if (executor == null || parallelism == 1) {
+            multiplyRows(a, b, c, size, 0, 1);
+            return;
+        }
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int task = 0; task < parallelism; task++) {
+            final int firstBlock = task;
+            final int blockStep = parallelism;
+            tasks.add(() -> {
+                multiplyRows(a, b, c, size, firstBlock, blockStep);
+                return null;
+            });
+        }
+        for (Future<Void> result : executor.invokeAll(tasks)) {
+            try {
+                result.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw (RuntimeException) cause;
+            }
+        }
+    }
+
+    /**
+     * Computes some of the blocks of rows of a product. The columns are taken
+     * a block at a time so that the block of the right matrix being read
+     * stays in the cache while it is used for every row of the block.
+     *
+     * @param a          the left matrix
+     * @param b          the right matrix
+     * @param c          receives the rows of the product
+     * @param size       N
+     * @param firstBlock the first block of rows
+     * @param blockStep  the distance between two blocks of rows
+     */
+    private static void multiplyRows(double[] a, double[] b, double[] c, int size,
+                                     int firstBlock, int blockStep) {
+        for (int rowStart = firstBlock * BLOCK_SIZE; rowStart < size; rowStart += blockStep * BLOCK_SIZE) {
+            int rowEnd = Math.min(rowStart + BLOCK_SIZE, size);
+            Arrays.fill(c, rowStart * size, rowEnd * size, 0);
+            for (int innerStart = 0; innerStart < size; innerStart += BLOCK_SIZE) {
+                int innerEnd = Math.min(innerStart + BLOCK_SIZE, size);
+                for (int columnStart = 0; columnStart < size; columnStart += BLOCK_SIZE) {
+                    int columnEnd = Math.min(columnStart + BLOCK_SIZE, size);
+                    for (int i = rowStart; i < rowEnd; i++) {
+                        int row = i * size;
+                        for (int k = innerStart; k < innerEnd; k++) {
+                            double value = a[row + k];
+                            if (value == 0) {
+                                continue;
+                            }
+                            int inner = k * size;
+                            for (int j = columnStart; j < columnEnd; j++) {
+                                c[row + j] += value * b[inner + j];
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
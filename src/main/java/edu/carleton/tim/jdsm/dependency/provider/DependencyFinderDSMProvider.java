@@ -35,8 +35,11 @@ ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package edu.carleton.tim.jdsm.dependency.provider;
 
 import edu.carleton.tim.jdsm.DesignStructureMatrix;
+import edu.carleton.tim.jdsm.ProgressMonitor;
+import edu.carleton.tim.jdsm.dependency.CountDependencyDSM;
 import edu.carleton.tim.jdsm.dependency.Dependency;
 import edu.carleton.tim.jdsm.dependency.DependencyDSM;
+import edu.carleton.tim.jdsm.dependency.SparseDependencyDSM;
 import edu.carleton.tim.jdsm.dependency.jaxb.Class;
 import edu.carleton.tim.jdsm.dependency.jaxb.*;
 import edu.carleton.tim.jdsm.dependency.jaxb.Package;
@@ -57,8 +60,10 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 
@@ -86,9 +91,19 @@ public class DependencyFinderDSMProvider {
     protected Map<String, Integer> clusterStartPositionMappings = new HashMap<String, Integer>();
 
     /**
-     * The map.
+     * The DSM being populated.
      */
-    protected Dependency[][] map;
+    protected DesignStructureMatrix<Dependency> dsm;
+
+    /**
+     * The DSM being populated, when references are counted.
+     */
+    protected CountDependencyDSM counts;
+
+    /**
+     * The references of the current class counted so far.
+     */
+    private Set<String> references = new HashSet<String>();
 
     /**
      * The name position mappings.
@@ -120,10 +135,190 @@ public class DependencyFinderDSMProvider {
             String inputFileName, String filterExpression)
             throws JAXBException, SAXException, ParserConfigurationException,
             FileNotFoundException {
+        return loadDesignStructureMatrix(inputFileName, filterExpression, new ProgressMonitor());
+    }
+
+    /**
+     * Load from dependency finder xml, stopping early if the monitor asks to.
+     * The monitor is checked before each class; when it stops the loading,
+     * the DSM has all the classes but only the dependencies of the classes
+     * processed so far. Parsing the file itself cannot be stopped.
+     *
+     * @param inputFileName    the input file name
+     * @param filterExpression the filter expression
+     * @param monitor          the monitor of the loading
+     * @return the design structure matrix< dependency>
+     * @throws JAXBException                the JAXB exception
+     * @throws SAXException                 the SAX exception
+     * @throws ParserConfigurationException the parser configuration exception
+     * @throws FileNotFoundException        the file not found exception
+     */
+    public static DesignStructureMatrix<Dependency> loadDesignStructureMatrix(
+            String inputFileName, String filterExpression, ProgressMonitor monitor)
+            throws JAXBException, SAXException, ParserConfigurationException,
+            FileNotFoundException {
+        DependencyFinderDSMProvider instance = new DependencyFinderDSMProvider();
+        Dependencies dependencies = instance.loadDependencies(inputFileName, filterExpression);
+
+        int totalNrClasses = instance.namePositionMappings.keySet().size();
+        Dependency[][] map = new Dependency[totalNrClasses][totalNrClasses];
+
+        for (int i = 0; i < totalNrClasses; i++) {
+            for (int j = 0; j < totalNrClasses; j++) {
+                map[i][j] = Dependency.NO;
+            }
+        }
+
+        instance.dsm = new DependencyDSM(instance.clusterEndPositionMappings,
+                instance.clusterStartPositionMappings,
+                instance.namePositionMappings,
+                instance.positionNameMappings,
+                map);
+        instance.processDependencies(dependencies, monitor);
+
+        logger.info("Finished parsing dependencies from file: " + inputFileName);
+        return instance.dsm;
+    }
+
+    /**
+     * Load from dependency finder xml into a {@link SparseDependencyDSM}. The
+     * memory needed is proportional to the number of classes plus the number
+     * of dependencies, so this should be used for large code bases.
+     *
+     * @param inputFileName    the input file name
+     * @param filterExpression the filter expression
+     * @return the sparse design structure matrix
+     * @throws JAXBException                the JAXB exception
+     * @throws SAXException                 the SAX exception
+     * @throws ParserConfigurationException the parser configuration exception
+     * @throws FileNotFoundException        the file not found exception
+     */
+    public static SparseDependencyDSM loadSparseDesignStructureMatrix(
+            String inputFileName, String filterExpression)
+            throws JAXBException, SAXException, ParserConfigurationException,
+            FileNotFoundException {
+        return loadSparseDesignStructureMatrix(inputFileName, filterExpression, new ProgressMonitor());
+    }
+
+    /**
+     * Load from dependency finder xml into a {@link SparseDependencyDSM}. The
+     * memory needed is proportional to the number of classes plus the number
+     * of dependencies, so this should be used for large code bases. <br>
+     * <br>
+     * The monitor is checked before each class; when it stops the loading,
+     * the DSM has all the classes but only the dependencies of the classes
+     * processed so far. Parsing the file itself cannot be stopped.
+     *
+     * @param inputFileName    the input file name
+     * @param filterExpression the filter expression
+     * @param monitor          the monitor of the loading
+     * @return the sparse design structure matrix
+     * @throws JAXBException                the JAXB exception
+     * @throws SAXException                 the SAX exception
+     * @throws ParserConfigurationException the parser configuration exception
+     * @throws FileNotFoundException        the file not found exception
+     */
+    public static SparseDependencyDSM loadSparseDesignStructureMatrix(
+            String inputFileName, String filterExpression, ProgressMonitor monitor)
+            throws JAXBException, SAXException, ParserConfigurationException,
+            FileNotFoundException {
+        DependencyFinderDSMProvider instance = new DependencyFinderDSMProvider();
+        Dependencies dependencies = instance.loadDependencies(inputFileName, filterExpression);
+
+        SparseDependencyDSM dsm = new SparseDependencyDSM(instance.clusterEndPositionMappings,
+                instance.clusterStartPositionMappings,
+                instance.namePositionMappings,
+                instance.positionNameMappings,
+                instance.namePositionMappings.keySet().size());
+        instance.dsm = dsm;
+        instance.processDependencies(dependencies, monitor);
+
+        logger.info("Finished parsing dependencies from file: " + inputFileName);
+        return dsm;
+    }
+
+    /**
+     * Load from dependency finder xml into a {@link CountDependencyDSM}. Each
+     * cell holds the number of distinct references from the row class and its
+     * features to the column class and its features, so the DSM shows how
+     * strongly two classes are coupled. Use
+     * {@link CountDependencyDSM#toDependencyDSM(int)} to keep only the
+     * dependencies with enough references.
+     *
+     * @param inputFileName    the input file name
+     * @param filterExpression the filter expression
+     * @return the count design structure matrix
+     * @throws JAXBException                the JAXB exception
+     * @throws SAXException                 the SAX exception
+     * @throws ParserConfigurationException the parser configuration exception
+     * @throws FileNotFoundException        the file not found exception
+     */
+    public static CountDependencyDSM loadCountDesignStructureMatrix(
+            String inputFileName, String filterExpression)
+            throws JAXBException, SAXException, ParserConfigurationException,
+            FileNotFoundException {
+        return loadCountDesignStructureMatrix(inputFileName, filterExpression, new ProgressMonitor());
+    }
+
+    /**
+     * Load from dependency finder xml into a {@link CountDependencyDSM}. Each
+     * cell holds the number of distinct references from the row class and its
+     * features to the column class and its features, so the DSM shows how
+     * strongly two classes are coupled. Use
+     * {@link CountDependencyDSM#toDependencyDSM(int)} to keep only the
+     * dependencies with enough references. <br>
+     * <br>
+     * The monitor is checked before each class; when it stops the loading,
+     * the DSM has all the classes but only the dependencies of the classes
+     * processed so far. Parsing the file itself cannot be stopped.
+     *
+     * @param inputFileName    the input file name
+     * @param filterExpression the filter expression
+     * @param monitor          the monitor of the loading
+     * @return the count design structure matrix
+     * @throws JAXBException                the JAXB exception
+     * @throws SAXException                 the SAX exception
+     * @throws ParserConfigurationException the parser configuration exception
+     * @throws FileNotFoundException        the file not found exception
+     */
+    public static CountDependencyDSM loadCountDesignStructureMatrix(
+            String inputFileName, String filterExpression, ProgressMonitor monitor)
+            throws JAXBException, SAXException, ParserConfigurationException,
+            FileNotFoundException {
         DependencyFinderDSMProvider instance = new DependencyFinderDSMProvider();
+        Dependencies dependencies = instance.loadDependencies(inputFileName, filterExpression);
+
+        CountDependencyDSM dsm = new CountDependencyDSM(instance.clusterEndPositionMappings,
+                instance.clusterStartPositionMappings,
+                instance.namePositionMappings,
+                instance.positionNameMappings,
+                instance.namePositionMappings.keySet().size());
+        instance.dsm = dsm;
+        instance.counts = dsm;
+        instance.processDependencies(dependencies, monitor);
+
+        logger.info("Finished parsing dependencies from file: " + inputFileName);
+        return dsm;
+    }
+
+    /**
+     * Parses the dependency finder xml and assigns a position to every class
+     * of the packages matching the filter.
+     *
+     * @param inputFileName    the input file name
+     * @param filterExpression the filter expression
+     * @return the parsed dependencies
+     * @throws JAXBException                the JAXB exception
+     * @throws SAXException                 the SAX exception
+     * @throws ParserConfigurationException the parser configuration exception
+     * @throws FileNotFoundException        the file not found exception
+     */
+    private Dependencies loadDependencies(String inputFileName, String filterExpression)
+            throws JAXBException, SAXException, ParserConfigurationException,
+            FileNotFoundException {
         logger.info("Started parsing dependencies from file: " + inputFileName);
         logger.info("Using filter expression:" + filterExpression);
-        instance.setFilterExpression(filterExpression);
+        setFilterExpression(filterExpression);
         Dependencies dependencies = null;
 
         SAXParserFactory parserFactory = SAXParserFactory.newInstance();
@@ -145,55 +340,57 @@ public class DependencyFinderDSMProvider {
         int counter = 0;
         for (edu.carleton.tim.jdsm.dependency.jaxb.Package package1 : dependencies.getPackage()) {
             String currentPackage = package1.getName();
-            if (instance.matchesPattern(currentPackage)) {
+            if (matchesPattern(currentPackage)) {
                 List<Class> classes = package1.getClazz();
 
-                instance.clusterStartPositionMappings.put(currentPackage, counter);
-                instance.clusterEndPositionMappings.put(currentPackage, counter + classes.size());
+                clusterStartPositionMappings.put(currentPackage, counter);
+                clusterEndPositionMappings.put(currentPackage, counter + classes.size());
 
-                instance.updateParentPackages(currentPackage, classes.size());
+                updateParentPackages(currentPackage, classes.size());
 
                 for (Class class1 : classes) {
-                    instance.namePositionMappings.put(class1.getName(), counter);
-                    instance.positionNameMappings.put(counter, class1.getName());
+                    namePositionMappings.put(class1.getName(), counter);
+                    positionNameMappings.put(counter, class1.getName());
                     counter++;
                 }
             }
         }
 
-        int totalNrClasses = instance.namePositionMappings.keySet().size();
-        logger.info("Loaded " + totalNrClasses + " classes.");
-        instance.map = new Dependency[totalNrClasses][totalNrClasses];
-
-        for (int i = 0; i < totalNrClasses; i++) {
-            for (int j = 0; j < totalNrClasses; j++) {
-                instance.map[i][j] = Dependency.NO;
-            }
-        }
+        logger.info("Loaded " + namePositionMappings.keySet().size() + " classes.");
+        return dependencies;
+    }
 
+    /**
+     * Records the outbound dependencies of every class of the packages matching
+     * the filter in the DSM.
+     *
+     * @param dependencies the parsed dependencies
+     * @param monitor      the monitor, checked before each class
+     */
+    private void processDependencies(Dependencies dependencies, ProgressMonitor monitor) {
+        monitor.begin("Processing dependencies", namePositionMappings.size());
         for (Package package1 : dependencies.getPackage()) {
             String currentPackage = package1.getName();
-            if (instance.matchesPattern(currentPackage)) {
+            if (matchesPattern(currentPackage)) {
                 List<Class> classes = package1.getClazz();
                 for (Class class1 : classes) {
+                    if (monitor.isStopped()) {
+                        logger.info("Stopped processing dependencies.");
+                        return;
+                    }
                     String currentClassName = class1.getName();
-                    Integer currentClassId = instance.namePositionMappings.get(currentClassName);
+                    Integer currentClassId = namePositionMappings.get(currentClassName);
                     List<Outbound> outboundList = class1.getOutbound();
-                    instance.processOutboundDependencies(currentClassId, outboundList);
+                    references.clear();
+                    processOutboundDependencies(currentClassId, outboundList);
 
                     for (Feature feature : class1.getFeature()) {
-                        instance.processOutboundDependencies(currentClassId, feature.getOutbound());
+                        processOutboundDependencies(currentClassId, feature.getOutbound());
                     }
                 }
+                monitor.worked(classes.size());
             }
         }
-
-        logger.info("Finished parsing dependencies from file: " + inputFileName);
-        return new DependencyDSM(instance.clusterEndPositionMappings,
-                instance.clusterStartPositionMappings,
-                instance.namePositionMappings,
-                instance.positionNameMappings,
-                instance.map);
     }
 
     /**
@@ -249,7 +446,11 @@ public class DependencyFinderDSMProvider {
             Integer dependableClassId = namePositionMappings.get(dependableClassName);
             if (dependableClassId != null
                     && !dependableClassId.equals(currentClassId)) {
-                map[currentClassId][dependableClassId] = Dependency.YES;
+                if (counts == null) {
+                    dsm.set(currentClassId, dependableClassId, Dependency.YES);
+                } else if (references.add(outbound.getContent())) {
+                    counts.addCount(currentClassId, dependableClassId, 1);
+                }
             }
         }
     }